@@ -0,0 +1,161 @@
+package com.aviary.wp;
+
+import android.content.Context;
+import android.content.res.Resources;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.graphics.drawable.Drawable;
+import android.text.TextPaint;
+import android.util.AttributeSet;
+import android.view.View;
+
+/**
+ * Workspace cell showing an application icon above its label. The icon and the label, laid out by a {@link LabelCache}, are drawn
+ * directly, and the pressed and focused highlights are picked from the view state without a state list background.
+ */
+public class CellIconView extends View {
+
+	// Label text size, in dip
+	private static final float LABEL_TEXT_SIZE = 13;
+
+	private final FastBitmapDrawable mIcon = new FastBitmapDrawable( null );
+	private final TextPaint mPaint;
+
+	private CharSequence mText;
+	private LabelCache mLabelCache;
+	private LabelCache.Label mLabel;
+	private int mLabelWidth = -1;
+
+	private final Drawable mPressedBackground;
+	private final Drawable mFocusedBackground;
+	private Drawable mHighlight;
+
+	public CellIconView( Context context ) {
+		this( context, null );
+	}
+
+	public CellIconView( Context context, AttributeSet attrs ) {
+		super( context, attrs );
+
+		final Resources res = context.getResources();
+		mPaint = createLabelPaint( res );
+
+		mPressedBackground = res.getDrawable( R.drawable.pressed_application_background );
+		mFocusedBackground = res.getDrawable( R.drawable.focused_application_background );
+		mPressedBackground.setCallback( this );
+		mFocusedBackground.setCallback( this );
+
+		setClickable( true );
+		setFocusable( true );
+	}
+
+	/**
+	 * Returns a paint set up to draw cell labels, centered on their x coordinate
+	 */
+	static TextPaint createLabelPaint( Resources res ) {
+		final TextPaint paint = new TextPaint( Paint.ANTI_ALIAS_FLAG );
+		paint.setTextSize( LABEL_TEXT_SIZE * res.getDisplayMetrics().density );
+		paint.setColor( Color.WHITE );
+		paint.setTextAlign( Paint.Align.CENTER );
+		return paint;
+	}
+
+	/**
+	 * Returns the paint used for the label, label caches feeding this view must measure with the same paint
+	 */
+	TextPaint getPaint() {
+		return mPaint;
+	}
+
+	void setLabelCache( LabelCache cache ) {
+		mLabelCache = cache;
+		mLabel = null;
+	}
+
+	/**
+	 * Show an icon and a label. The size of the view does not depend on them, so only a redraw is needed.
+	 */
+	void bind( Bitmap icon, CharSequence text ) {
+		mIcon.setBitmap( icon );
+		mText = text;
+		mLabel = null;
+		invalidate();
+	}
+
+	CharSequence getText() {
+		return mText;
+	}
+
+	@Override
+	protected void onMeasure( int widthMeasureSpec, int heightMeasureSpec ) {
+		final int lineHeight = (int) Math.ceil( mPaint.getFontSpacing() );
+		final int width = getPaddingLeft() + getPaddingRight() + Math.max( mIcon.getIntrinsicWidth(), lineHeight * 4 );
+		final int height = getPaddingTop() + getPaddingBottom() + mIcon.getIntrinsicHeight() + lineHeight * 2;
+		setMeasuredDimension( resolveSize( width, widthMeasureSpec ), resolveSize( height, heightMeasureSpec ) );
+	}
+
+	@Override
+	protected void drawableStateChanged() {
+		super.drawableStateChanged();
+
+		Drawable highlight = null;
+		if ( isPressed() ) {
+			highlight = mPressedBackground;
+		} else if ( isFocused() && hasWindowFocus() ) {
+			highlight = mFocusedBackground;
+		}
+
+		if ( highlight != mHighlight ) {
+			mHighlight = highlight;
+			invalidate();
+		}
+	}
+
+	@Override
+	protected boolean verifyDrawable( Drawable who ) {
+		return who == mPressedBackground || who == mFocusedBackground || super.verifyDrawable( who );
+	}
+
+	@Override
+	protected void onDraw( Canvas canvas ) {
+		final int width = getWidth();
+
+		if ( mHighlight != null ) {
+			mHighlight.setBounds( 0, 0, width, getHeight() );
+			mHighlight.draw( canvas );
+		}
+
+		int top = getPaddingTop();
+		if ( mIcon.getBitmap() != null ) {
+			final int iconWidth = mIcon.getIntrinsicWidth();
+			final int left = ( width - iconWidth ) / 2;
+			mIcon.setBounds( left, top, left + iconWidth, top + mIcon.getIntrinsicHeight() );
+			mIcon.draw( canvas );
+			top += mIcon.getIntrinsicHeight();
+		}
+
+		if ( mText == null ) return;
+
+		final int labelWidth = width - getPaddingLeft() - getPaddingRight();
+		if ( mLabel == null || labelWidth != mLabelWidth ) {
+			mLabel = mLabelCache != null ? mLabelCache.get( mText, labelWidth ) : LabelCache.layout( mPaint, mText.toString(),
+					labelWidth );
+			mLabelWidth = labelWidth;
+		}
+
+		drawLabel( canvas, mLabel, mPaint, getPaddingLeft() + labelWidth / 2f, top );
+	}
+
+	/**
+	 * Draw the lines of a label centered on a x coordinate, the first line starting at the given top
+	 */
+	static void drawLabel( Canvas canvas, LabelCache.Label label, TextPaint paint, float centerX, int top ) {
+		final float baseline = top - paint.ascent();
+		canvas.drawText( label.line1, centerX, baseline, paint );
+		if ( label.line2 != null ) {
+			canvas.drawText( label.line2, centerX, baseline + paint.getFontSpacing(), paint );
+		}
+	}
+}
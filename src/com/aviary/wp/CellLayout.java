@@ -16,13 +16,14 @@
 
 package com.aviary.wp;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import android.content.Context;
 import android.content.res.TypedArray;
 import android.graphics.Canvas;
 import android.graphics.Rect;
 import android.graphics.RectF;
 import android.util.AttributeSet;
-import android.util.Log;
 import android.view.ContextMenu;
 import android.view.MotionEvent;
 import android.view.View;
@@ -50,10 +51,36 @@ public class CellLayout extends ViewGroup {
 	public final CellInfo mCellInfo = new CellInfo();
 
 	int[] mCellXY = new int[2];
-	boolean[][] mOccupied;
+	final CellOccupancy mOccupied = new CellOccupancy( 0, 0 );
+	private final CellPlacement mPlacement = new CellPlacement( mOccupied );
+	private CellReflow mReflow;
+	private final ArrayList<View> mOverflowViews = new ArrayList<View>();
+
+	// Child covering each cell, indexed by y * mAxisCells + x
+	private View[] mCellViews = new View[0];
 
 	private boolean mLastDownOnOccupiedCell = false;
 
+	// Flat mode: shortcuts drawn by mFlatRenderer instead of child views, indexed by cell like mCellViews. Children only exist
+	// for the shortcuts which needed a real view.
+	private ArrayList<ShortcutInfo> mFlatItems;
+	private ShortcutInfo[] mFlatCells = new ShortcutInfo[0];
+	private FlatPageRenderer mFlatRenderer;
+	private ShortcutInfo mPressedItem;
+	private OnItemClickListener mOnItemClickListener;
+	private final Rect mFlatRect = new Rect();
+
+	private DrawingCacheBudget mCacheBudget;
+
+	// Size the cell geometry was last computed for, the geometry is recomputed when it changes or mGeometryValid is reset
+	private int mGeometryWidth = -1;
+	private int mGeometryHeight = -1;
+	private boolean mGeometryValid;
+
+	// Horizontal part of the layout which is visible on screen, in local coordinates
+	private int mVisibleLeft = 0;
+	private int mVisibleRight = Integer.MAX_VALUE;
+
 	public CellLayout( Context context ) {
 		this( context, null );
 	}
@@ -86,13 +113,343 @@ public class CellLayout extends ViewGroup {
 	}
 	
 	private void resetCells(){
-		mOccupied = new boolean[mAxisCells][mAxisRows];
+		mOccupied.resize( mAxisCells, mAxisRows );
+		mGeometryValid = false;
+
+		final int size = mAxisCells * mAxisRows;
+		if ( mCellViews.length != size ) {
+			mCellViews = new View[size];
+			mFlatCells = new ShortcutInfo[size];
+		} else {
+			Arrays.fill( mCellViews, null );
+			Arrays.fill( mFlatCells, null );
+		}
+		markFlatItems();
+
+		final int count = getChildCount();
+		for ( int i = 0; i < count; i++ ) {
+			final View child = getChildAt( i );
+			markCells( child, (LayoutParams) child.getLayoutParams(), true );
+		}
+	}
+
+	private void clearCells() {
+		mOccupied.clear();
+		Arrays.fill( mCellViews, null );
+		markFlatItems();
+	}
+
+	/**
+	 * Mark the cells of the flat mode shortcuts in the occupancy grid and index them
+	 */
+	private void markFlatItems() {
+		Arrays.fill( mFlatCells, null );
+		final ArrayList<ShortcutInfo> items = mFlatItems;
+		if ( items == null ) return;
+
+		final int xCount = mAxisCells;
+		final int count = items.size();
+		for ( int i = 0; i < count; i++ ) {
+			final ShortcutInfo item = items.get( i );
+			mOccupied.set( item.cellX, item.cellY, item.spanX, item.spanY, true );
+
+			final int right = Math.min( xCount, item.cellX + item.spanX );
+			final int bottom = Math.min( mAxisRows, item.cellY + item.spanY );
+			for ( int y = Math.max( 0, item.cellY ); y < bottom; y++ ) {
+				for ( int x = Math.max( 0, item.cellX ); x < right; x++ ) {
+					mFlatCells[y * xCount + x] = item;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Mark or clear the cells covered by a child in the occupancy grid and the cell index. When clearing, other children sharing
+	 * some of those cells keep them.
+	 */
+	private void markCells( View child, LayoutParams lp, boolean occupied ) {
+		if ( lp == null ) return;
+
+		mOccupied.set( lp.cellX, lp.cellY, lp.cellHSpan, lp.cellVSpan, occupied );
+		indexCells( child, lp, occupied );
+
+		if ( !occupied ) {
+			final int count = getChildCount();
+			for ( int i = 0; i < count; i++ ) {
+				final View other = getChildAt( i );
+				if ( other == child ) continue;
+				final LayoutParams olp = (LayoutParams) other.getLayoutParams();
+				if ( olp.cellX < lp.cellX + lp.cellHSpan && lp.cellX < olp.cellX + olp.cellHSpan && olp.cellY < lp.cellY + lp.cellVSpan
+						&& lp.cellY < olp.cellY + olp.cellVSpan ) {
+					mOccupied.set( olp.cellX, olp.cellY, olp.cellHSpan, olp.cellVSpan, true );
+					indexCells( other, olp, true );
+				}
+			}
+
+			// flat mode shortcuts keep their cells when their real view goes away
+			if ( mFlatItems != null ) {
+				final int right = Math.min( mAxisCells, lp.cellX + lp.cellHSpan );
+				final int bottom = Math.min( mAxisRows, lp.cellY + lp.cellVSpan );
+				for ( int y = Math.max( 0, lp.cellY ); y < bottom; y++ ) {
+					for ( int x = Math.max( 0, lp.cellX ); x < right; x++ ) {
+						if ( mFlatCells[y * mAxisCells + x] != null ) {
+							mOccupied.set( x, y, 1, 1, true );
+						}
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Switch the page to flat mode: the shortcuts are drawn by the renderer from their model, without a child view each. All the
+	 * current children are removed, views are then only created for the shortcuts which need one, i.e. to take the focus.
+	 * 
+	 * @param items
+	 *           shortcuts of the page, with their cell set, or null to leave flat mode
+	 * @param renderer
+	 *           draws the shortcuts and creates their views
+	 */
+	void setFlatItems( ArrayList<ShortcutInfo> items, FlatPageRenderer renderer ) {
+		mFlatItems = items;
+		mFlatRenderer = renderer;
+		mPressedItem = null;
+		removeAllViewsInLayout();
+
+		setFocusable( items != null && !items.isEmpty() );
+		requestLayout();
+		invalidate();
+	}
+
+	boolean isFlat() {
+		return mFlatItems != null;
+	}
+
+	/**
+	 * Returns the shortcuts of the page in flat mode, or null
+	 */
+	ArrayList<ShortcutInfo> getFlatItems() {
+		return mFlatItems;
+	}
+
+	/**
+	 * Returns the flat mode shortcut under a point, in local coordinates
+	 * 
+	 * @return the shortcut or null if the point falls on an empty cell or between cells
+	 */
+	ShortcutInfo getItemAtPoint( int x, int y ) {
+		if ( mFlatItems == null || mCellWidth + mWidthGap <= 0 || mCellHeight + mHeightGap <= 0 ) return null;
+
+		final int[] cellXY = mCellXY;
+		pointToCellExact( x, y, cellXY );
+		final ShortcutInfo item = mFlatCells[cellXY[1] * mAxisCells + cellXY[0]];
+		if ( item != null ) {
+			cellToRect( item.cellX, item.cellY, item.spanX, item.spanY, mFlatRect );
+			if ( mFlatRect.contains( x, y ) ) return item;
+		}
+		return null;
+	}
+
+	/**
+	 * Returns the view of a flat mode shortcut, creating it if needed. The view is measured and laid out right away since it is
+	 * created to take the focus, it is removed again once another child gets the focus.
+	 */
+	View getItemView( ShortcutInfo item ) {
+		final int index = Math.max( 0, item.cellY ) * mAxisCells + Math.max( 0, item.cellX );
+		final View existing = index < mCellViews.length ? mCellViews[index] : null;
+		if ( existing != null && existing.getTag() == item ) return existing;
+
+		final View view = mFlatRenderer.createView( getContext(), item );
+		view.setOnClickListener( mItemViewClickListener );
+		final LayoutParams lp = new LayoutParams( item.cellX, item.cellY, item.spanX, item.spanY );
+		addViewInLayout( view, -1, lp, true );
+
+		if ( mGeometryValid ) {
+			lp.setup( mCellWidth, mCellHeight, mWidthGap, mHeightGap, mStartPadding, mTopPadding );
+			view.measure( MeasureSpec.makeMeasureSpec( lp.width, MeasureSpec.EXACTLY ),
+					MeasureSpec.makeMeasureSpec( lp.height, MeasureSpec.EXACTLY ) );
+			view.layout( lp.x, lp.y, lp.x + lp.width, lp.y + lp.height );
+		} else {
+			requestLayout();
+		}
+		return view;
+	}
+
+	private final View.OnClickListener mItemViewClickListener = new View.OnClickListener() {
+
+		@Override
+		public void onClick( View v ) {
+			if ( mOnItemClickListener != null ) {
+				mOnItemClickListener.onItemClick( CellLayout.this, (ShortcutInfo) v.getTag() );
+			}
+		}
+	};
+
+	interface OnItemClickListener {
+
+		void onItemClick( CellLayout layout, ShortcutInfo item );
+	}
+
+	void setOnItemClickListener( OnItemClickListener listener ) {
+		mOnItemClickListener = listener;
+	}
+
+	private void setPressedItem( ShortcutInfo item ) {
+		if ( item == mPressedItem ) return;
+		if ( mPressedItem != null ) {
+			invalidateItem( mPressedItem );
+		}
+		mPressedItem = item;
+		if ( item != null ) {
+			invalidateItem( item );
+		}
+	}
+
+	private void invalidateItem( ShortcutInfo item ) {
+		cellToRect( item.cellX, item.cellY, item.spanX, item.spanY, mFlatRect );
+		invalidate( mFlatRect );
+	}
+
+	private void drawFlatItems( Canvas canvas ) {
+		final ArrayList<ShortcutInfo> items = mFlatItems;
+		final FlatPageRenderer renderer = mFlatRenderer;
+		final Rect rect = mFlatRect;
+		final int count = items.size();
+
+		for ( int i = 0; i < count; i++ ) {
+			final ShortcutInfo item = items.get( i );
+			if ( getChildAtCell( item.cellX, item.cellY ) != null ) continue;
+
+			cellToRect( item.cellX, item.cellY, item.spanX, item.spanY, rect );
+			if ( rect.right <= mVisibleLeft || rect.left >= mVisibleRight ) continue;
+			renderer.draw( canvas, item, rect, item == mPressedItem );
+		}
+	}
+
+	private void indexCells( View child, LayoutParams lp, boolean occupied ) {
+		final int xCount = mAxisCells;
+		final int left = Math.max( 0, lp.cellX );
+		final int right = Math.min( xCount, lp.cellX + lp.cellHSpan );
+		final int top = Math.max( 0, lp.cellY );
+		final int bottom = Math.min( mAxisRows, lp.cellY + lp.cellVSpan );
+		final View[] views = mCellViews;
+
+		for ( int y = top; y < bottom; y++ ) {
+			for ( int x = left; x < right; x++ ) {
+				final int index = y * xCount + x;
+				if ( occupied ) {
+					views[index] = child;
+				} else if ( views[index] == child ) {
+					views[index] = null;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Returns the child covering a cell
+	 * 
+	 * @return the child or null if the cell is empty or outside of the grid
+	 */
+	View getChildAtCell( int cellX, int cellY ) {
+		if ( cellX < 0 || cellY < 0 || cellX >= mAxisCells || cellY >= mAxisRows ) return null;
+		return mCellViews[cellY * mAxisCells + cellX];
+	}
+
+	/**
+	 * Returns the child under a point, in local coordinates
+	 * 
+	 * @return the child or null if the point falls on an empty cell or between cells
+	 */
+	View getChildAtPoint( int x, int y ) {
+		if ( mCellWidth + mWidthGap <= 0 || mCellHeight + mHeightGap <= 0 ) return null;
+
+		final int[] cellXY = mCellXY;
+		pointToCellExact( x, y, cellXY );
+		final View child = getChildAtCell( cellXY[0], cellXY[1] );
+		if ( child != null && x >= child.getLeft() && x < child.getRight() && y >= child.getTop() && y < child.getBottom() ) {
+			return child;
+		}
+		return null;
+	}
+
+	/**
+	 * Returns the closest child next to the given one in a direction, looking along the row (or column) of its top left cell.
+	 * 
+	 * @param direction
+	 *           one of {@link View#FOCUS_LEFT}, {@link View#FOCUS_RIGHT}, {@link View#FOCUS_UP} or {@link View#FOCUS_DOWN}
+	 * @return the neighbour or null
+	 */
+	View getNeighbour( View child, int direction ) {
+		final LayoutParams lp = (LayoutParams) child.getLayoutParams();
+		int dx = 0, dy = 0;
+		int x = lp.cellX;
+		int y = lp.cellY;
+
+		switch ( direction ) {
+			case View.FOCUS_LEFT:
+				dx = -1;
+				x -= 1;
+				break;
+			case View.FOCUS_RIGHT:
+				dx = 1;
+				x += lp.cellHSpan;
+				break;
+			case View.FOCUS_UP:
+				dy = -1;
+				y -= 1;
+				break;
+			case View.FOCUS_DOWN:
+				dy = 1;
+				y += lp.cellVSpan;
+				break;
+			default:
+				return null;
+		}
+
+		while ( x >= 0 && y >= 0 && x < mAxisCells && y < mAxisRows ) {
+			final View view = mCellViews[y * mAxisCells + x];
+			if ( view != null && view != child ) return view;
+			x += dx;
+			y += dy;
+		}
+		return null;
+	}
+
+	/**
+	 * Collect the children covering at least one cell of a region. Each child is added once.
+	 * 
+	 * @return the number of children added to <code>out</code>
+	 */
+	int getChildrenInRect( int cellX, int cellY, int spanX, int spanY, ArrayList<View> out ) {
+		final int xCount = mAxisCells;
+		final int left = Math.max( 0, cellX );
+		final int right = Math.min( xCount, cellX + spanX );
+		final int top = Math.max( 0, cellY );
+		final int bottom = Math.min( mAxisRows, cellY + spanY );
+		final View[] views = mCellViews;
+		final int start = out.size();
+
+		for ( int y = top; y < bottom; y++ ) {
+			for ( int x = left; x < right; x++ ) {
+				final View view = views[y * xCount + x];
+				if ( view == null ) continue;
+
+				// a child spanning several cells is only added for the first one met in the region
+				final LayoutParams lp = (LayoutParams) view.getLayoutParams();
+				if ( Math.max( lp.cellX, left ) == x && Math.max( lp.cellY, top ) == y ) {
+					out.add( view );
+				}
+			}
+		}
+		return out.size() - start;
 	}
 	
 	public void setNumCols( int value ){
 		if( mAxisCells != value ){
 			mAxisCells = value;
 			resetCells();
+			compactCells( mOverflowViews );
 		}
 	}
 	
@@ -100,18 +457,167 @@ public class CellLayout extends ViewGroup {
 		if( value != mAxisRows ){
 			mAxisRows = value;
 			resetCells();
+			compactCells( mOverflowViews );
+		}
+	}
+
+	/**
+	 * Returns the children removed by the last {@link #setNumCols(int)} or {@link #setNumRows(int)} because they did not fit in the
+	 * new grid, in cell order, so they can be moved to another page. The list is cleared by the next grid change.
+	 */
+	ArrayList<View> getOverflowViews() {
+		return mOverflowViews;
+	}
+
+	/**
+	 * Move the children to close the holes of the grid, keeping their order. Called when the grid shape changes so the children
+	 * flow into the new grid.
+	 * 
+	 * @param overflow
+	 *           cleared, then receives the children which do not fit in the grid. They are removed from this layout.
+	 * @return the number of children which do not fit in the grid
+	 */
+	int compactCells( ArrayList<View> overflow ) {
+		overflow.clear();
+		if ( getChildCount() == 0 ) return 0;
+		if ( mReflow == null ) {
+			mReflow = new CellReflow();
+		}
+
+		final int lost = mReflow.compact( this, overflow );
+
+		// the overflowing children still hold cells given to others: remove them without touching the occupancy, then rebuild it
+		for ( int i = 0; i < lost; i++ ) {
+			super.removeViewInLayout( overflow.get( i ) );
 		}
+		resetCells();
+		return lost;
 	}
 	
 	@Override
 	public void removeAllViews() {
 		super.removeAllViews();
-		mOccupied = new boolean[mAxisCells][mAxisRows];
+		clearCells();
+	}
+
+	@Override
+	public void removeAllViewsInLayout() {
+		super.removeAllViewsInLayout();
+		clearCells();
+	}
+
+	@Override
+	public void removeView( View view ) {
+		final boolean isChild = view.getParent() == this;
+		super.removeView( view );
+		if ( isChild ) {
+			markCells( view, (LayoutParams) view.getLayoutParams(), false );
+		}
+	}
+
+	@Override
+	public void removeViewInLayout( View view ) {
+		final boolean isChild = view.getParent() == this;
+		super.removeViewInLayout( view );
+		if ( isChild ) {
+			markCells( view, (LayoutParams) view.getLayoutParams(), false );
+		}
+	}
+
+	@Override
+	public void removeViewAt( int index ) {
+		final View view = getChildAt( index );
+		super.removeViewAt( index );
+		if ( view != null ) {
+			markCells( view, (LayoutParams) view.getLayoutParams(), false );
+		}
+	}
+
+	@Override
+	public void removeViews( int start, int count ) {
+		final View[] removed = collectChildren( start, count );
+		super.removeViews( start, count );
+		for ( View view : removed ) {
+			markCells( view, (LayoutParams) view.getLayoutParams(), false );
+		}
+	}
+
+	@Override
+	public void removeViewsInLayout( int start, int count ) {
+		final View[] removed = collectChildren( start, count );
+		super.removeViewsInLayout( start, count );
+		for ( View view : removed ) {
+			markCells( view, (LayoutParams) view.getLayoutParams(), false );
+		}
+	}
+
+	private View[] collectChildren( int start, int count ) {
+		final View[] views = new View[count];
+		for ( int i = 0; i < count; i++ ) {
+			views[i] = getChildAt( start + i );
+		}
+		return views;
+	}
+
+	/**
+	 * Move and/or resize a child, keeping the occupancy grid in sync.
+	 */
+	void setChildCell( View child, int cellX, int cellY, int spanH, int spanV ) {
+		final LayoutParams lp = (LayoutParams) child.getLayoutParams();
+		if ( lp.cellX == cellX && lp.cellY == cellY && lp.cellHSpan == spanH && lp.cellVSpan == spanV ) return;
+
+		final boolean attached = child.getParent() == this;
+		if ( attached ) {
+			markCells( child, lp, false );
+		}
+
+		lp.cellX = cellX;
+		lp.cellY = cellY;
+		lp.cellHSpan = spanH;
+		lp.cellVSpan = spanV;
+		lp.regenerateId = true;
+
+		if ( attached ) {
+			markCells( child, lp, true );
+			requestLayout();
+		}
+	}
+
+	/**
+	 * Set the horizontal extent of this layout which is visible on screen. Cells entirely outside of it are not drawn.
+	 * 
+	 * @param left
+	 *           left edge of the visible part, in local coordinates
+	 * @param right
+	 *           right edge of the visible part, in local coordinates
+	 */
+	void setVisibleExtent( int left, int right ) {
+		mVisibleLeft = left;
+		mVisibleRight = right;
 	}
 
 	@Override
 	public void dispatchDraw( Canvas canvas ) {
-		super.dispatchDraw( canvas );
+		final int visibleLeft = mVisibleLeft;
+		final int visibleRight = mVisibleRight;
+
+		if ( mFlatItems != null ) {
+			drawFlatItems( canvas );
+		}
+
+		if ( visibleLeft <= 0 && visibleRight >= getWidth() ) {
+			super.dispatchDraw( canvas );
+			return;
+		}
+
+		final long drawingTime = getDrawingTime();
+		final int count = getChildCount();
+		for ( int i = 0; i < count; i++ ) {
+			final View child = getChildAt( i );
+			if ( child.getVisibility() != VISIBLE && child.getAnimation() == null ) continue;
+			if ( child.getRight() <= visibleLeft || child.getLeft() >= visibleRight ) continue;
+			drawChild( canvas, child, drawingTime );
+		}
 	}
 
 	@Override
@@ -137,14 +643,64 @@ public class CellLayout extends ViewGroup {
 	@Override
 	public void addView( View child, int index, ViewGroup.LayoutParams params ) {
 		final LayoutParams cellParams = (LayoutParams) params;
-		Log.d( Workspace.TAG, "addView: (cellX=" + cellParams.cellX + ", cellY=" + cellParams.cellY + ", spanH=" + cellParams.cellHSpan + ", spanV=" + cellParams.cellVSpan + ")" );
+		if ( WorkspaceTrace.ENABLED ) WorkspaceTrace.trace( WorkspaceTrace.CELL_ADD_VIEW, cellParams.cellX, cellParams.cellY, cellParams.cellHSpan,
+				cellParams.cellVSpan );
 		cellParams.regenerateId = true;
 		
-		mOccupied[cellParams.cellX][cellParams.cellY] = true;
+		markCells( child, cellParams, true );
 		
 		super.addView( child, index, params );
 	}
 
+	@Override
+	protected boolean addViewInLayout( View child, int index, ViewGroup.LayoutParams params, boolean preventRequestLayout ) {
+		final LayoutParams cellParams = (LayoutParams) params;
+		cellParams.regenerateId = true;
+
+		markCells( child, cellParams, true );
+
+		return super.addViewInLayout( child, index, params, preventRequestLayout );
+	}
+
+	/**
+	 * Attach a whole page of children at once. The occupancy of all the cells is validated up front, then the children are
+	 * attached without requesting a layout each, so the page is measured and laid out in a single pass.
+	 * 
+	 * @param children
+	 *           views to attach, they must not have a parent
+	 * @param params
+	 *           cell position and span of each view
+	 * @param count
+	 *           number of entries of the arrays to attach
+	 * @return false if a cell is outside of the grid, already occupied or used twice, in which case nothing is attached
+	 */
+	boolean addViews( View[] children, LayoutParams[] params, int count ) {
+		final CellOccupancy occupied = mOccupied;
+
+		for ( int i = 0; i < count; i++ ) {
+			final LayoutParams lp = params[i];
+			if ( !occupied.isRegionVacant( lp.cellX, lp.cellY, lp.cellHSpan, lp.cellVSpan ) ) {
+				for ( int j = 0; j < i; j++ ) {
+					final LayoutParams marked = params[j];
+					occupied.set( marked.cellX, marked.cellY, marked.cellHSpan, marked.cellVSpan, false );
+				}
+				return false;
+			}
+			occupied.set( lp.cellX, lp.cellY, lp.cellHSpan, lp.cellVSpan, true );
+		}
+
+		for ( int i = 0; i < count; i++ ) {
+			final LayoutParams lp = params[i];
+			lp.regenerateId = true;
+			indexCells( children[i], lp, true );
+			super.addViewInLayout( children[i], -1, lp, true );
+		}
+
+		requestLayout();
+		invalidate();
+		return true;
+	}
+
 	public CellInfo findVacantCell() {
 		return findVacantCell( 1, 1 );
 	}
@@ -157,56 +713,35 @@ public class CellLayout extends ViewGroup {
 			return null;
 		}
 
-		for ( int x = 0; x < mOccupied.length; x++ ) {
-			for ( int y = 0; y < mOccupied[x].length; y++ ) {
-				if ( findVacantCell( x, y, spanH, spanV ) ) {
-					CellInfo info = new CellInfo();
-					info.cellX = x;
-					info.cellY = y;
-					info.spanH = spanH;
-					info.spanV = spanV;
-					info.screen = mCellInfo.screen;
-					return info;
-				}
-			}
+		final int[] cellXY = mCellXY;
+		if ( mOccupied.findVacant( spanH, spanV, cellXY ) ) {
+			CellInfo info = new CellInfo();
+			info.cellX = cellXY[0];
+			info.cellY = cellXY[1];
+			info.spanH = spanH;
+			info.spanV = spanV;
+			info.screen = mCellInfo.screen;
+			return info;
 		}
 
 		return null;
 	}
 
-	private boolean findVacantCell( int x, int y, int spanH, int spanV ) {
-
-		if ( x < mOccupied.length ) {
-			if ( y < mOccupied[x].length ) {
-
-				if ( !mOccupied[x][y] ) {
-					
-					boolean result = true;
-
-					if ( spanH > 1 ) {
-						result = findVacantCell( x + 1, y, spanH - 1, 1 );
-					} else {
-						result = true;
-					}
+	@Override
+	public void requestChildFocus( View child, View focused ) {
+		super.requestChildFocus( child, focused );
 
-					if ( spanV > 1 ) {
-						result &= findVacantCell( x, y + 1, 1, spanV - 1 );
-					} else {
-						result &= true;
-					}
-					
-					if( result )
-						return true;
-						
+		// in flat mode the children only exist for the focus, the one which just lost it is not needed anymore
+		if ( mFlatItems != null && child != null ) {
+			for ( int i = getChildCount() - 1; i >= 0; i-- ) {
+				final View view = getChildAt( i );
+				if ( view != child ) {
+					removeViewInLayout( view );
 				}
 			}
+			invalidate();
 		}
-		return false;
-	}
 
-	@Override
-	public void requestChildFocus( View child, View focused ) {
-		super.requestChildFocus( child, focused );
 		if ( child != null ) {
 			Rect r = new Rect();
 			child.getDrawingRect( r );
@@ -215,21 +750,129 @@ public class CellLayout extends ViewGroup {
 	}
 
 	@Override
-	protected void onAttachedToWindow() {
-		super.onAttachedToWindow();
-		mCellInfo.screen = ( (ViewGroup) getParent() ).indexOfChild( this );
+	public boolean requestFocus( int direction, Rect previouslyFocusedRect ) {
+		return super.requestFocus( direction, previouslyFocusedRect );
 	}
 
 	@Override
-	public boolean requestFocus( int direction, Rect previouslyFocusedRect ) {
-		return super.requestFocus( direction, previouslyFocusedRect );
+	public boolean onInterceptTouchEvent( MotionEvent ev ) {
+		if ( ( ev.getAction() & MotionEvent.ACTION_MASK ) == MotionEvent.ACTION_DOWN ) {
+			final CellInfo cellInfo = mCellInfo;
+			final int x = (int) ev.getX() + getScrollX();
+			final int y = (int) ev.getY() + getScrollY();
+			final View child = getChildAtPoint( x, y );
+
+			if ( child != null && child.getVisibility() == VISIBLE ) {
+				final LayoutParams lp = (LayoutParams) child.getLayoutParams();
+				cellInfo.cell = child;
+				cellInfo.cellX = lp.cellX;
+				cellInfo.cellY = lp.cellY;
+				cellInfo.spanH = lp.cellHSpan;
+				cellInfo.spanV = lp.cellVSpan;
+				cellInfo.valid = true;
+				mLastDownOnOccupiedCell = true;
+			} else {
+				cellInfo.cell = null;
+				cellInfo.spanH = 1;
+				cellInfo.spanV = 1;
+				cellInfo.valid = false;
+				mLastDownOnOccupiedCell = false;
+			}
+		}
+		return false;
 	}
 
 	@Override
 	public boolean onTouchEvent( MotionEvent event ) {
+		if ( mFlatItems == null ) return true;
+
+		final int x = (int) event.getX() + getScrollX();
+		final int y = (int) event.getY() + getScrollY();
+
+		switch ( event.getAction() & MotionEvent.ACTION_MASK ) {
+			case MotionEvent.ACTION_DOWN:
+				setPressedItem( getItemAtPoint( x, y ) );
+				break;
+			case MotionEvent.ACTION_MOVE:
+				if ( mPressedItem != null && getItemAtPoint( x, y ) != mPressedItem ) {
+					setPressedItem( null );
+				}
+				break;
+			case MotionEvent.ACTION_UP:
+				final ShortcutInfo item = mPressedItem;
+				setPressedItem( null );
+				if ( item != null && mOnItemClickListener != null ) {
+					mOnItemClickListener.onItemClick( this, item );
+				}
+				break;
+			case MotionEvent.ACTION_CANCEL:
+				setPressedItem( null );
+				break;
+		}
 		return true;
 	}
 
+	@Override
+	protected void onFocusChanged( boolean gainFocus, int direction, Rect previouslyFocusedRect ) {
+		super.onFocusChanged( gainFocus, direction, previouslyFocusedRect );
+
+		// a flat page passes the focus on to the view of its first shortcut
+		if ( gainFocus && mFlatItems != null && !mFlatItems.isEmpty() ) {
+			getItemView( mFlatItems.get( 0 ) ).requestFocus();
+		}
+	}
+
+	@Override
+	public View focusSearch( View focused, int direction ) {
+		if ( mFlatItems != null && focused != null && focused.getParent() == this ) {
+			final View next = getFlatNeighbour( focused, direction );
+			if ( next != null ) return next;
+		}
+		return super.focusSearch( focused, direction );
+	}
+
+	/**
+	 * Same as {@link #getNeighbour(View, int)} in flat mode, the view of the shortcut found is created if needed
+	 */
+	private View getFlatNeighbour( View child, int direction ) {
+		final LayoutParams lp = (LayoutParams) child.getLayoutParams();
+		int dx = 0, dy = 0;
+		int x = lp.cellX;
+		int y = lp.cellY;
+
+		switch ( direction ) {
+			case View.FOCUS_LEFT:
+				dx = -1;
+				x -= 1;
+				break;
+			case View.FOCUS_RIGHT:
+				dx = 1;
+				x += lp.cellHSpan;
+				break;
+			case View.FOCUS_UP:
+				dy = -1;
+				y -= 1;
+				break;
+			case View.FOCUS_DOWN:
+				dy = 1;
+				y += lp.cellVSpan;
+				break;
+			default:
+				return null;
+		}
+
+		while ( x >= 0 && y >= 0 && x < mAxisCells && y < mAxisRows ) {
+			final int index = y * mAxisCells + x;
+			final View view = mCellViews[index];
+			if ( view != null && view != child ) return view;
+			final ShortcutInfo item = mFlatCells[index];
+			if ( item != null && item != child.getTag() ) return getItemView( item );
+			x += dx;
+			y += dy;
+		}
+		return null;
+	}
+
 	/**
 	 * Given a point, return the cell that strictly encloses that point
 	 * 
@@ -289,6 +932,16 @@ public class CellLayout extends ViewGroup {
 		result[1] = vStartPadding + cellY * ( mCellHeight + mHeightGap );
 	}
 
+	/**
+	 * Given a cell and a span, return the bounds of the area they cover, in local coordinates
+	 */
+	void cellToRect( int cellX, int cellY, int spanX, int spanY, Rect result ) {
+		final int left = mStartPadding + cellX * ( mCellWidth + mWidthGap );
+		final int top = mTopPadding + cellY * ( mCellHeight + mHeightGap );
+		result.set( left, top, left + spanX * mCellWidth + ( spanX - 1 ) * mWidthGap, top + spanY * mCellHeight + ( spanY - 1 )
+				* mHeightGap );
+	}
+
 	int getCellWidth() {
 		return mCellWidth;
 	}
@@ -325,6 +978,42 @@ public class CellLayout extends ViewGroup {
 			throw new RuntimeException( "CellLayout cannot have UNSPECIFIED dimensions" );
 		}
 		
+		final boolean geometryChanged = !mGeometryValid || width != mGeometryWidth || height != mGeometryHeight;
+		if ( geometryChanged ) {
+			computeGeometry( width, height );
+		}
+
+		int count = getChildCount();
+		
+		for ( int i = 0; i < count; i++ ) {
+			View child = getChildAt( i );
+			LayoutParams lp = (LayoutParams) child.getLayoutParams();
+
+			final boolean setup = geometryChanged || lp.isSetupStale();
+			if ( setup ) {
+				lp.setup( mCellWidth, mCellHeight, mWidthGap, mHeightGap, mStartPadding, mTopPadding );
+			}
+
+			if ( lp.regenerateId ) {
+				child.setId( ( ( getId() & 0xFF ) << 16 ) | ( lp.cellX & 0xFF ) << 8 | ( lp.cellY & 0xFF ) );
+				lp.regenerateId = false;
+			}
+
+			// children keep their last measure as long as their cell and content did not change
+			if ( setup || child.isLayoutRequested() || child.getMeasuredWidth() != lp.width || child.getMeasuredHeight() != lp.height ) {
+				int childWidthMeasureSpec = MeasureSpec.makeMeasureSpec( lp.width, MeasureSpec.EXACTLY );
+				int childheightMeasureSpec = MeasureSpec.makeMeasureSpec( lp.height, MeasureSpec.EXACTLY );
+				child.measure( childWidthMeasureSpec, childheightMeasureSpec );
+			}
+		}
+		setMeasuredDimension( width, height );
+		if ( WorkspaceTrace.ENABLED ) WorkspaceTrace.trace( WorkspaceTrace.CELL_MEASURE, width, height, count );
+	}
+
+	/**
+	 * Compute the cell size and the gaps between cells for the given size
+	 */
+	private void computeGeometry( int width, int height ) {
 		int numHGaps = mAxisCells - 1;
 		int numVGaps = mAxisRows - 1;
 		
@@ -340,38 +1029,19 @@ public class CellLayout extends ViewGroup {
 		mHeightGap = 0;
 		mWidthGap = 0;
 
-
 		int vTotalSpace = availableHeight - ( mCellHeight * mAxisRows );
-		try
-		{
+		if ( numVGaps > 0 ) {
 			mHeightGap = vTotalSpace / numVGaps;
-		} catch( ArithmeticException e ){
 		}
 
 		int hTotalSpace = availableWidth - ( mCellWidth * mAxisCells );
 		if ( numHGaps > 0 ) {
 			mWidthGap = hTotalSpace / numHGaps;
 		}
-		
-		int count = getChildCount();
-		
-		for ( int i = 0; i < count; i++ ) {
-			View child = getChildAt( i );
-			LayoutParams lp = (LayoutParams) child.getLayoutParams();
-
-			lp.setup( mCellWidth, mCellHeight, mWidthGap, mHeightGap, mStartPadding, mTopPadding );
 
-			if ( lp.regenerateId ) {
-				child.setId( ( ( getId() & 0xFF ) << 16 ) | ( lp.cellX & 0xFF ) << 8 | ( lp.cellY & 0xFF ) );
-				lp.regenerateId = false;
-			}
-
-			int childWidthMeasureSpec = MeasureSpec.makeMeasureSpec( lp.width, MeasureSpec.EXACTLY );
-			int childheightMeasureSpec = MeasureSpec.makeMeasureSpec( lp.height, MeasureSpec.EXACTLY );
-			child.measure( childWidthMeasureSpec, childheightMeasureSpec );
-		}
-		setMeasuredDimension( width, height );
-		Log.d( Workspace.TAG, "size: " + width + "x" + height );
+		mGeometryWidth = width;
+		mGeometryHeight = height;
+		mGeometryValid = true;
 	}
 
 	@Override
@@ -390,13 +1060,33 @@ public class CellLayout extends ViewGroup {
 		}
 	}
 
+	/**
+	 * Build the drawing caches of the children through a budget shared with the other pages, null to build them unconditionally
+	 */
+	void setDrawingCacheBudget( DrawingCacheBudget budget ) {
+		mCacheBudget = budget;
+	}
+
 	@Override
 	protected void setChildrenDrawingCacheEnabled( boolean enabled ) {
+		final DrawingCacheBudget budget = mCacheBudget;
 		final int count = getChildCount();
 		for ( int i = 0; i < count; i++ ) {
 			final View view = getChildAt( i );
-			view.setDrawingCacheEnabled( enabled );
-			view.buildDrawingCache( true );
+			if ( enabled ) {
+				if ( view.getVisibility() != VISIBLE ) continue;
+				if ( budget != null ) {
+					budget.acquire( view );
+				} else {
+					view.setDrawingCacheEnabled( true );
+					view.buildDrawingCache( true );
+				}
+			} else if ( budget != null ) {
+				budget.release( view );
+			} else {
+				view.setDrawingCacheEnabled( false );
+				view.destroyDrawingCache();
+			}
 		}
 	}
 
@@ -460,72 +1150,85 @@ public class CellLayout extends ViewGroup {
 	 * @return True if a vacant cell was found
 	 */
 	public boolean getVacantCell( int[] vacant, int spanX, int spanY ) {
-		final int xCount = mAxisCells;
-		final int yCount = mAxisRows;
-		final boolean[][] occupied = mOccupied;
-		findOccupiedCells( xCount, yCount, occupied, null );
-		return findVacantCell( vacant, spanX, spanY, xCount, yCount, occupied );
-	}
-
-	static boolean findVacantCell( int[] vacant, int spanX, int spanY, int xCount, int yCount, boolean[][] occupied ) {
-
-		for ( int x = 0; x < xCount; x++ ) {
-			for ( int y = 0; y < yCount; y++ ) {
-				boolean available = !occupied[x][y];
-				out:
-				for ( int i = x; i < x + spanX - 1 && x < xCount; i++ ) {
-					for ( int j = y; j < y + spanY - 1 && y < yCount; j++ ) {
-						available = available && !occupied[i][j];
-						if ( !available ) break out;
-					}
-				}
+		return mOccupied.findVacant( spanX, spanY, vacant );
+	}
 
-				if ( available ) {
-					vacant[0] = x;
-					vacant[1] = y;
-					return true;
-				}
-			}
+	/**
+	 * Find the vacant area of the given span whose center is the closest to a point.
+	 * 
+	 * @param pixelX
+	 *           X coordinate of the point, in local coordinates
+	 * @param pixelY
+	 *           Y coordinate of the point, in local coordinates
+	 * @param spanX
+	 *           Horizontal cell span.
+	 * @param spanY
+	 *           Vertical cell span.
+	 * @param result
+	 *           Holds the x and y coordinate of the area
+	 * 
+	 * @return True if a vacant area was found
+	 */
+	boolean findNearestVacantArea( int pixelX, int pixelY, int spanX, int spanY, int[] result ) {
+		final int pitchX = mCellWidth + mWidthGap;
+		final int pitchY = mCellHeight + mHeightGap;
+		if ( pitchX <= 0 || pitchY <= 0 ) {
+			return mPlacement.findFirstFit( spanX, spanY, result );
 		}
 
-		return false;
+		final float targetX = ( pixelX - mStartPadding + mWidthGap / 2f ) / pitchX;
+		final float targetY = ( pixelY - mTopPadding + mHeightGap / 2f ) / pitchY;
+		return mPlacement.findNearest( targetX, targetY, pitchX, pitchY, spanX, spanY, result );
+	}
+
+	/**
+	 * Find the vacant area of the given span which leaves the fewest free cells around it.
+	 * 
+	 * @return True if a vacant area was found
+	 */
+	boolean findBestVacantArea( int spanX, int spanY, int[] result ) {
+		return mPlacement.findBestFit( spanX, spanY, result );
 	}
 
 	boolean[] getOccupiedCells() {
-		final int xCount = mAxisCells;
-		final int yCount = mAxisRows;
-		final boolean[][] occupied = mOccupied;
-		findOccupiedCells( xCount, yCount, occupied, null );
-		final boolean[] flat = new boolean[xCount * yCount];
-		for ( int y = 0; y < yCount; y++ ) {
-			for ( int x = 0; x < xCount; x++ ) {
-				flat[y * xCount + x] = occupied[x][y];
-			}
-		}
+		final boolean[] flat = new boolean[mAxisCells * mAxisRows];
+		getOccupiedCells( flat );
 		return flat;
 	}
 
-	private void findOccupiedCells( int xCount, int yCount, boolean[][] occupied, View ignoreView ) {
-		for ( int x = 0; x < xCount; x++ ) {
-			for ( int y = 0; y < yCount; y++ ) {
-				occupied[x][y] = false;
-			}
-		}
+	/**
+	 * Copy the occupied cells without allocating, cell (x, y) is at y * getCountX() + x.
+	 * 
+	 * @param out
+	 *           holds at least getCountX() * getCountY() flags
+	 * @return the occupancy version of the snapshot
+	 * @see #getOccupancyVersion()
+	 */
+	int getOccupiedCells( boolean[] out ) {
+		mOccupied.copyTo( out );
+		return mOccupied.getVersion();
+	}
 
-		int count = getChildCount();
-		for ( int i = 0; i < count; i++ ) {
-			View child = getChildAt( i );
-			if ( child.equals( ignoreView ) ) {
-				continue;
-			}
-			LayoutParams lp = (LayoutParams) child.getLayoutParams();
+	/**
+	 * Copy the occupied cells as bitmasks without allocating. Each row uses (getCountX() + 63) / 64 words and column x is bit
+	 * x % 64 of its word.
+	 * 
+	 * @param out
+	 *           holds at least getCountY() * ( ( getCountX() + 63 ) / 64 ) words
+	 * @return the occupancy version of the snapshot
+	 * @see #getOccupancyVersion()
+	 */
+	int getOccupiedBits( long[] out ) {
+		mOccupied.copyTo( out );
+		return mOccupied.getVersion();
+	}
 
-			for ( int x = lp.cellX; x < lp.cellX + lp.cellHSpan && x < xCount; x++ ) {
-				for ( int y = lp.cellY; y < lp.cellY + lp.cellVSpan && y < yCount; y++ ) {
-					occupied[x][y] = true;
-				}
-			}
-		}
+	/**
+	 * Returns a number which changes every time a cell of this layout is occupied or freed, or the grid changes. Comparing it with
+	 * the version of a snapshot tells whether the snapshot is stale without looking at the cells.
+	 */
+	int getOccupancyVersion() {
+		return mOccupied.getVersion();
 	}
 
 	@Override
@@ -573,6 +1276,17 @@ public class CellLayout extends ViewGroup {
 
 		boolean regenerateId;
 
+		// Cell, span and margins x, y, width and height were last computed for. The fields above are public, so they are compared
+		// instead of relying on a flag every writer would have to set.
+		private int setupCellX;
+		private int setupCellY;
+		private int setupHSpan;
+		private int setupVSpan;
+		private int setupLeftMargin;
+		private int setupTopMargin;
+		private int setupRightMargin;
+		private int setupBottomMargin;
+
 		public LayoutParams( Context c, AttributeSet attrs ) {
 			super( c, attrs );
 			cellHSpan = 1;
@@ -608,8 +1322,27 @@ public class CellLayout extends ViewGroup {
 
 			x = hStartPadding + myCellX * ( cellWidth + widthGap ) + leftMargin;
 			y = vStartPadding + myCellY * ( cellHeight + heightGap ) + topMargin;
-			
-			Log.d( Workspace.TAG, "setup. position: " + x + "x" + y + ", size: " + width + "x" + height + " gap: " + widthGap + "x" + heightGap );
+
+			setupCellX = myCellX;
+			setupCellY = myCellY;
+			setupHSpan = myCellHSpan;
+			setupVSpan = myCellVSpan;
+			setupLeftMargin = leftMargin;
+			setupTopMargin = topMargin;
+			setupRightMargin = rightMargin;
+			setupBottomMargin = bottomMargin;
+
+			if ( WorkspaceTrace.ENABLED ) WorkspaceTrace.trace( WorkspaceTrace.LAYOUT_PARAMS_SETUP, x, y, width, height );
+		}
+
+		/**
+		 * Returns true if the cell, the span or the margins changed since the last {@link #setup}
+		 */
+		boolean isSetupStale() {
+			// spans are at least 1, a span of 0 means setup never ran
+			return setupHSpan == 0 || cellX != setupCellX || cellY != setupCellY || cellHSpan != setupHSpan
+					|| cellVSpan != setupVSpan || leftMargin != setupLeftMargin || topMargin != setupTopMargin
+					|| rightMargin != setupRightMargin || bottomMargin != setupBottomMargin;
 		}
 	}
 
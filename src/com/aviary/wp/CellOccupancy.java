@@ -0,0 +1,303 @@
+package com.aviary.wp;
+
+import java.util.Arrays;
+
+/**
+ * Occupancy grid of a {@link CellLayout}, stored as one bitmask of <code>long</code> words per row. Span tests and vacancy
+ * searches work on whole words, grids can have any number of columns.
+ */
+class CellOccupancy {
+
+	private static final int WORD_SHIFT = 6;
+	private static final int WORD_SIZE = 1 << WORD_SHIFT;
+	private static final int WORD_MASK = WORD_SIZE - 1;
+
+	private int mCountX;
+	private int mCountY;
+	private int mWordsPerRow;
+
+	// Row major, row y uses the words [y * mWordsPerRow, (y + 1) * mWordsPerRow)
+	private long[] mBits;
+
+	// Free cells of the rows being tested by findVacant
+	private long[] mScratch;
+
+	// Incremented on every change, lets derived tables know when they are stale
+	private int mVersion;
+
+	// Summed-area table, (mCountX + 1) * (mCountY + 1) entries: the entry of (x + 1, y + 1) is the number of occupied cells in
+	// [0, x] x [0, y]. Changes only invalidate the sums right of mSumsFromX and below mSumsFromY, which are recomputed on the
+	// next region test.
+	private int[] mSums;
+	private int mSumsFromX;
+	private int mSumsFromY;
+
+	CellOccupancy( int countX, int countY ) {
+		resize( countX, countY );
+	}
+
+	/**
+	 * Change the grid size. The grid is cleared, the storage is only reallocated when it is too small.
+	 */
+	void resize( int countX, int countY ) {
+		mCountX = Math.max( 0, countX );
+		mCountY = Math.max( 0, countY );
+		mWordsPerRow = ( mCountX + WORD_MASK ) >>> WORD_SHIFT;
+		mVersion++;
+
+		final int size = mWordsPerRow * mCountY;
+		if ( mBits == null || mBits.length < size ) {
+			mBits = new long[size];
+		} else {
+			Arrays.fill( mBits, 0 );
+		}
+
+		if ( mScratch == null || mScratch.length < mWordsPerRow ) {
+			mScratch = new long[mWordsPerRow];
+		}
+
+		final int sums = ( mCountX + 1 ) * ( mCountY + 1 );
+		if ( mSums == null || mSums.length < sums ) {
+			mSums = new int[sums];
+		} else {
+			Arrays.fill( mSums, 0, sums, 0 );
+		}
+		mSumsFromX = mCountX;
+		mSumsFromY = mCountY;
+	}
+
+	void clear() {
+		Arrays.fill( mBits, 0, mWordsPerRow * mCountY, 0 );
+		Arrays.fill( mSums, 0, ( mCountX + 1 ) * ( mCountY + 1 ), 0 );
+		mSumsFromX = mCountX;
+		mSumsFromY = mCountY;
+		mVersion++;
+	}
+
+	int getVersion() {
+		return mVersion;
+	}
+
+	int getCountX() {
+		return mCountX;
+	}
+
+	int getCountY() {
+		return mCountY;
+	}
+
+	int getWordsPerRow() {
+		return mWordsPerRow;
+	}
+
+	/**
+	 * Copy the bitmask words, row y uses the words [y * getWordsPerRow(), (y + 1) * getWordsPerRow()) and column x is bit x % 64
+	 * of its word.
+	 * 
+	 * @param out
+	 *           holds at least getWordsPerRow() * getCountY() words
+	 */
+	void copyTo( long[] out ) {
+		System.arraycopy( mBits, 0, out, 0, mWordsPerRow * mCountY );
+	}
+
+	/**
+	 * Copy the grid as one flag per cell, cell (x, y) is at y * getCountX() + x.
+	 * 
+	 * @param out
+	 *           holds at least getCountX() * getCountY() flags
+	 */
+	void copyTo( boolean[] out ) {
+		final long[] bits = mBits;
+		final int xCount = mCountX;
+		for ( int y = 0; y < mCountY; y++ ) {
+			final int offset = y * mWordsPerRow;
+			final int row = y * xCount;
+			for ( int x = 0; x < xCount; x++ ) {
+				out[row + x] = ( bits[offset + ( x >>> WORD_SHIFT )] & ( 1L << x ) ) != 0;
+			}
+		}
+	}
+
+	boolean isOccupied( int x, int y ) {
+		if ( x < 0 || y < 0 || x >= mCountX || y >= mCountY ) return false;
+		return ( mBits[y * mWordsPerRow + ( x >>> WORD_SHIFT )] & ( 1L << x ) ) != 0;
+	}
+
+	/**
+	 * Mark or clear a region. The part of the region outside of the grid is ignored.
+	 */
+	void set( int x, int y, int spanX, int spanY, boolean occupied ) {
+		int left = Math.max( 0, x );
+		int right = Math.min( mCountX, x + spanX );
+		int top = Math.max( 0, y );
+		int bottom = Math.min( mCountY, y + spanY );
+
+		if ( left >= right || top >= bottom ) return;
+
+		mVersion++;
+		mSumsFromX = Math.min( mSumsFromX, left );
+		mSumsFromY = Math.min( mSumsFromY, top );
+
+		final long[] bits = mBits;
+		final int firstWord = left >>> WORD_SHIFT;
+		final int lastWord = ( right - 1 ) >>> WORD_SHIFT;
+
+		for ( int row = top; row < bottom; row++ ) {
+			final int offset = row * mWordsPerRow;
+			for ( int w = firstWord; w <= lastWord; w++ ) {
+				final long mask = rangeMask( w, left, right );
+				if ( occupied ) {
+					bits[offset + w] |= mask;
+				} else {
+					bits[offset + w] &= ~mask;
+				}
+			}
+		}
+	}
+
+	/**
+	 * @return true if the region lies inside the grid and none of its cells is occupied
+	 */
+	boolean isRegionVacant( int x, int y, int spanX, int spanY ) {
+		if ( spanX < 1 || spanY < 1 ) return false;
+		if ( x < 0 || y < 0 || x + spanX > mCountX || y + spanY > mCountY ) return false;
+		return countOccupied( x, y, spanX, spanY ) == 0;
+	}
+
+	/**
+	 * Returns the number of occupied cells of a region, which must lie inside the grid, in constant time.
+	 */
+	int countOccupied( int x, int y, int spanX, int spanY ) {
+		updateSums();
+
+		final int[] sums = mSums;
+		final int stride = mCountX + 1;
+		final int top = y * stride;
+		final int bottom = ( y + spanY ) * stride;
+		return sums[bottom + x + spanX] - sums[bottom + x] - sums[top + x + spanX] + sums[top + x];
+	}
+
+	private void updateSums() {
+		final int fromX = mSumsFromX;
+		final int fromY = mSumsFromY;
+		final int xCount = mCountX;
+		final int yCount = mCountY;
+		if ( fromX >= xCount || fromY >= yCount ) return;
+
+		final long[] bits = mBits;
+		final int[] sums = mSums;
+		final int stride = xCount + 1;
+
+		for ( int y = fromY; y < yCount; y++ ) {
+			final int offset = y * mWordsPerRow;
+			final int above = y * stride;
+			final int row = above + stride;
+			for ( int x = fromX; x < xCount; x++ ) {
+				final int cell = ( bits[offset + ( x >>> WORD_SHIFT )] & ( 1L << x ) ) != 0 ? 1 : 0;
+				sums[row + x + 1] = cell + sums[row + x] + sums[above + x + 1] - sums[above + x];
+			}
+		}
+
+		mSumsFromX = xCount;
+		mSumsFromY = yCount;
+	}
+
+	/**
+	 * Find the first vacant region of the given size, scanning columns left to right and each column top to bottom.
+	 *
+	 * @param spanX
+	 *           horizontal span
+	 * @param spanY
+	 *           vertical span
+	 * @param vacant
+	 *           receives the x and y coordinate of the region
+	 * @return true if a vacant region was found
+	 */
+	boolean findVacant( int spanX, int spanY, int[] vacant ) {
+		if ( spanX < 1 || spanY < 1 || spanX > mCountX || spanY > mCountY ) return false;
+
+		final long[] bits = mBits;
+		final long[] free = mScratch;
+		final int words = mWordsPerRow;
+		final int lastMaskBits = mCountX & WORD_MASK;
+
+		int bestX = Integer.MAX_VALUE;
+		int bestY = -1;
+
+		for ( int y = 0; y + spanY <= mCountY; y++ ) {
+			// free cells common to rows y .. y + spanY - 1
+			for ( int w = 0; w < words; w++ ) {
+				long occupied = 0;
+				for ( int row = y; row < y + spanY; row++ ) {
+					occupied |= bits[row * words + w];
+				}
+				free[w] = ~occupied;
+			}
+			if ( lastMaskBits != 0 ) {
+				free[words - 1] &= ( 1L << lastMaskBits ) - 1;
+			}
+
+			// keep only the cells starting a run of spanX free cells
+			int length = 1;
+			while ( length < spanX ) {
+				final int shift = Math.min( length, spanX - length );
+				andShiftedRight( free, words, shift );
+				length += shift;
+			}
+
+			final int x = firstSetBit( free, words );
+			if ( x >= 0 && x < bestX ) {
+				bestX = x;
+				bestY = y;
+				if ( x == 0 ) break;
+			}
+		}
+
+		if ( bestY < 0 ) return false;
+
+		vacant[0] = bestX;
+		vacant[1] = bestY;
+		return true;
+	}
+
+	/**
+	 * bits &= bits >>> shift, treating the words as a single bit string
+	 */
+	private static void andShiftedRight( long[] bits, int words, int shift ) {
+		final int wordShift = shift >>> WORD_SHIFT;
+		final int bitShift = shift & WORD_MASK;
+
+		for ( int w = 0; w < words; w++ ) {
+			final int src = w + wordShift;
+			long shifted = 0;
+			if ( src < words ) {
+				shifted = bits[src] >>> bitShift;
+				if ( bitShift != 0 && src + 1 < words ) {
+					shifted |= bits[src + 1] << ( WORD_SIZE - bitShift );
+				}
+			}
+			bits[w] &= shifted;
+		}
+	}
+
+	private static int firstSetBit( long[] bits, int words ) {
+		for ( int w = 0; w < words; w++ ) {
+			if ( bits[w] != 0 ) {
+				return ( w << WORD_SHIFT ) + Long.numberOfTrailingZeros( bits[w] );
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Mask of the columns [left, right) falling into the given word
+	 */
+	private static long rangeMask( int word, int left, int right ) {
+		final int base = word << WORD_SHIFT;
+		final int from = Math.max( left - base, 0 );
+		final int to = Math.min( right - base, WORD_SIZE );
+		final long high = to == WORD_SIZE ? -1L : ( 1L << to ) - 1;
+		return high & ( -1L << from );
+	}
+}
@@ -0,0 +1,244 @@
+package com.aviary.wp;
+
+/**
+ * Answers placement queries for an item of a given span against a {@link CellOccupancy}: first fit, best fit and nearest fit to
+ * a point.
+ *
+ * Queries read two free-run tables (free cells to the right of and below every cell) and a fit table for the last requested span.
+ * The tables are only rebuilt when the occupancy changed, so repeated queries, i.e. on every touch move of a drag, cost a scan of
+ * the fit table at most.
+ */
+class CellPlacement {
+
+	private final CellOccupancy mOccupancy;
+
+	private int mCountX;
+	private int mCountY;
+
+	// Number of consecutive free cells starting at each cell, going right and going down
+	private int[] mRunRight = new int[0];
+	private int[] mRunDown = new int[0];
+	private int mRunVersion = -1;
+
+	// Whether an item of mFitSpanX x mFitSpanY fits with its top left corner on each cell
+	private boolean[] mFits = new boolean[0];
+	private int mFitVersion = -1;
+	private int mFitSpanX;
+	private int mFitSpanY;
+
+	// Squared distance of the best candidate of the running findNearest query
+	private float mBestDistance;
+
+	CellPlacement( CellOccupancy occupancy ) {
+		mOccupancy = occupancy;
+	}
+
+	/**
+	 * Find the first area of the given span, scanning columns left to right and each column top to bottom.
+	 */
+	boolean findFirstFit( int spanX, int spanY, int[] result ) {
+		if ( !updateFits( spanX, spanY ) ) return false;
+
+		final int xCount = mCountX;
+		final boolean[] fits = mFits;
+		for ( int x = 0; x < xCount; x++ ) {
+			for ( int y = 0; y < mCountY; y++ ) {
+				if ( fits[y * xCount + x] ) {
+					result[0] = x;
+					result[1] = y;
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Find the area of the given span leaving the fewest free cells directly next to it, ties are broken by the first fit order.
+	 */
+	boolean findBestFit( int spanX, int spanY, int[] result ) {
+		if ( !updateFits( spanX, spanY ) ) return false;
+
+		final int xCount = mCountX;
+		final boolean[] fits = mFits;
+		final int[] runRight = mRunRight;
+		final int[] runDown = mRunDown;
+		int bestWaste = Integer.MAX_VALUE;
+		boolean found = false;
+
+		for ( int x = 0; x < xCount; x++ ) {
+			for ( int y = 0; y < mCountY; y++ ) {
+				final int index = y * xCount + x;
+				if ( !fits[index] ) continue;
+
+				int waste = 0;
+				for ( int row = y; row < y + spanY; row++ ) {
+					waste += runRight[row * xCount + x] - spanX;
+				}
+				for ( int column = x; column < x + spanX; column++ ) {
+					waste += runDown[index - x + column] - spanY;
+				}
+
+				if ( waste < bestWaste ) {
+					bestWaste = waste;
+					result[0] = x;
+					result[1] = y;
+					found = true;
+					if ( waste == 0 ) return true;
+				}
+			}
+		}
+		return found;
+	}
+
+	/**
+	 * Find the area of the given span whose center is the closest to a point.
+	 *
+	 * @param targetX
+	 *           x coordinate of the point, in cells
+	 * @param targetY
+	 *           y coordinate of the point, in cells
+	 * @param weightX
+	 *           size of a cell horizontally, used to measure distances
+	 * @param weightY
+	 *           size of a cell vertically, used to measure distances
+	 */
+	boolean findNearest( float targetX, float targetY, float weightX, float weightY, int spanX, int spanY, int[] result ) {
+		if ( !updateFits( spanX, spanY ) ) return false;
+
+		final int lastX = mCountX - spanX;
+		final int lastY = mCountY - spanY;
+
+		// top left cell of the area centered on the target. Rows, and cells within a row, are visited outward from it so the
+		// distance only grows on each side and the search stops as soon as a side cannot do better.
+		final float originX = targetX - spanX / 2f;
+		final float originY = targetY - spanY / 2f;
+		final int startX = Math.max( 0, Math.min( Math.round( originX ), lastX ) );
+		final int startY = Math.max( 0, Math.min( Math.round( originY ), lastY ) );
+
+		mBestDistance = Float.MAX_VALUE;
+		boolean found = false;
+
+		for ( int i = 0; startY + i <= lastY || startY - i >= 0; i++ ) {
+			final int below = startY + i;
+			final int above = startY - i;
+			final float dyBelow = below <= lastY ? ( below - originY ) * weightY : Float.MAX_VALUE;
+			final float dyAbove = above >= 0 ? ( above - originY ) * weightY : Float.MAX_VALUE;
+
+			if ( Math.min( dyBelow * dyBelow, dyAbove * dyAbove ) >= mBestDistance ) break;
+
+			if ( below <= lastY ) {
+				found |= findNearestInRow( below, dyBelow * dyBelow, originX, weightX, startX, lastX, result );
+			}
+			if ( i > 0 && above >= 0 ) {
+				found |= findNearestInRow( above, dyAbove * dyAbove, originX, weightX, startX, lastX, result );
+			}
+		}
+		return found;
+	}
+
+	private boolean findNearestInRow( int y, float dy2, float originX, float weightX, int startX, int lastX, int[] result ) {
+		final boolean[] fits = mFits;
+		final int offset = y * mCountX;
+		boolean found = false;
+
+		for ( int x = startX; x <= lastX; x++ ) {
+			final float dx = ( x - originX ) * weightX;
+			final float distance = dx * dx + dy2;
+			if ( distance >= mBestDistance ) break;
+			if ( fits[offset + x] ) {
+				mBestDistance = distance;
+				result[0] = x;
+				result[1] = y;
+				found = true;
+				break;
+			}
+		}
+
+		for ( int x = startX - 1; x >= 0; x-- ) {
+			final float dx = ( x - originX ) * weightX;
+			final float distance = dx * dx + dy2;
+			if ( distance >= mBestDistance ) break;
+			if ( fits[offset + x] ) {
+				mBestDistance = distance;
+				result[0] = x;
+				result[1] = y;
+				found = true;
+				break;
+			}
+		}
+		return found;
+	}
+
+	/**
+	 * Rebuild the fit table for the given span if needed.
+	 *
+	 * @return false if the span cannot fit in the grid at all
+	 */
+	private boolean updateFits( int spanX, int spanY ) {
+		final CellOccupancy occupancy = mOccupancy;
+		if ( spanX < 1 || spanY < 1 || spanX > occupancy.getCountX() || spanY > occupancy.getCountY() ) return false;
+
+		updateRuns();
+
+		final int version = occupancy.getVersion();
+		if ( version == mFitVersion && spanX == mFitSpanX && spanY == mFitSpanY ) return true;
+
+		final int xCount = mCountX;
+		final int yCount = mCountY;
+		final int[] runRight = mRunRight;
+		final boolean[] fits = mFits;
+
+		// count, bottom up, the consecutive rows in which spanX free cells start at x
+		for ( int x = 0; x < xCount; x++ ) {
+			int rows = 0;
+			for ( int y = yCount - 1; y >= 0; y-- ) {
+				final int index = y * xCount + x;
+				rows = runRight[index] >= spanX ? rows + 1 : 0;
+				fits[index] = rows >= spanY;
+			}
+		}
+
+		mFitVersion = version;
+		mFitSpanX = spanX;
+		mFitSpanY = spanY;
+		return true;
+	}
+
+	private void updateRuns() {
+		final CellOccupancy occupancy = mOccupancy;
+		final int version = occupancy.getVersion();
+		if ( version == mRunVersion ) return;
+
+		final int xCount = occupancy.getCountX();
+		final int yCount = occupancy.getCountY();
+		final int size = xCount * yCount;
+
+		if ( mRunRight.length != size ) {
+			mRunRight = new int[size];
+			mRunDown = new int[size];
+			mFits = new boolean[size];
+		}
+		mCountX = xCount;
+		mCountY = yCount;
+
+		final int[] runRight = mRunRight;
+		final int[] runDown = mRunDown;
+
+		for ( int y = yCount - 1; y >= 0; y-- ) {
+			for ( int x = xCount - 1; x >= 0; x-- ) {
+				final int index = y * xCount + x;
+				if ( occupancy.isOccupied( x, y ) ) {
+					runRight[index] = 0;
+					runDown[index] = 0;
+				} else {
+					runRight[index] = x + 1 < xCount ? runRight[index + 1] + 1 : 1;
+					runDown[index] = y + 1 < yCount ? runDown[index + xCount] + 1 : 1;
+				}
+			}
+		}
+
+		mRunVersion = version;
+		mFitVersion = -1;
+	}
+}
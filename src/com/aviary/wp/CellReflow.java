@@ -0,0 +1,123 @@
+package com.aviary.wp;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import android.view.View;
+
+/**
+ * Moves items to the first vacant area, keeping their order, to close the holes of a page or to fit the items into a new grid.
+ *
+ * Items are ordered and placed column by column, top to bottom, the same order as {@link CellLayout#findVacantCell(int, int)}.
+ * An item already sitting on its first fit does not move, so compacting a page only moves the items after the first hole. This is
+ * a first fit, not the compaction moving the fewest items. Views are moved by updating their cell, they are never inflated again.
+ */
+class CellReflow {
+
+	private final CellOccupancy mOccupancy = new CellOccupancy( 0, 0 );
+	private final int[] mCellXY = new int[2];
+
+	private View[] mViews = new View[0];
+
+	private final Comparator<View> mCellOrder = new Comparator<View>() {
+
+		@Override
+		public int compare( View lhs, View rhs ) {
+			final CellLayout.LayoutParams l = (CellLayout.LayoutParams) lhs.getLayoutParams();
+			final CellLayout.LayoutParams r = (CellLayout.LayoutParams) rhs.getLayoutParams();
+			if ( l.cellX != r.cellX ) return l.cellX < r.cellX ? -1 : 1;
+			if ( l.cellY != r.cellY ) return l.cellY < r.cellY ? -1 : 1;
+			return 0;
+		}
+	};
+
+	/**
+	 * Compact the children of a layout into its current grid.
+	 *
+	 * @param overflow
+	 *           receives the children which do not fit in the grid anymore, in cell order. They keep their old cell, which may now
+	 *           be used by another child, so the caller must remove them from the layout.
+	 * @return the number of children added to overflow
+	 */
+	int compact( CellLayout layout, ArrayList<View> overflow ) {
+		final int count = layout.getChildCount();
+		if ( mViews.length < count ) {
+			mViews = new View[count];
+		}
+		final View[] views = mViews;
+		for ( int i = 0; i < count; i++ ) {
+			views[i] = layout.getChildAt( i );
+		}
+		Arrays.sort( views, 0, count, mCellOrder );
+
+		final int countX = layout.getCountX();
+		final int countY = layout.getCountY();
+		final CellOccupancy occupancy = mOccupancy;
+		final int[] cellXY = mCellXY;
+		occupancy.resize( countX, countY );
+
+		int lost = 0;
+		for ( int i = 0; i < count; i++ ) {
+			final View view = views[i];
+			final CellLayout.LayoutParams lp = (CellLayout.LayoutParams) view.getLayoutParams();
+			final int spanX = Math.min( lp.cellHSpan, countX );
+			final int spanY = Math.min( lp.cellVSpan, countY );
+
+			if ( occupancy.findVacant( spanX, spanY, cellXY ) ) {
+				occupancy.set( cellXY[0], cellXY[1], spanX, spanY, true );
+				layout.setChildCell( view, cellXY[0], cellXY[1], spanX, spanY );
+			} else {
+				overflow.add( view );
+				lost++;
+			}
+			views[i] = null;
+		}
+		return lost;
+	}
+
+	/**
+	 * Distribute items over as many pages of the given grid as needed, in the order of the array. Each item gets the first vacant
+	 * area of the current page, a new page is started when it does not fit anymore.
+	 *
+	 * @param items
+	 *           items to place, their screen, cell and span are updated
+	 * @param count
+	 *           number of items of the array to place
+	 * @param firstScreen
+	 *           screen of the first page
+	 * @return the number of pages used
+	 */
+	int paginate( ItemInfo[] items, int count, int countX, int countY, int firstScreen ) {
+		if ( count == 0 || countX < 1 || countY < 1 ) return 0;
+
+		final CellOccupancy occupancy = mOccupancy;
+		final int[] cellXY = mCellXY;
+		occupancy.resize( countX, countY );
+
+		int screen = firstScreen;
+		boolean empty = true;
+		for ( int i = 0; i < count; i++ ) {
+			final ItemInfo item = items[i];
+			final int spanX = Math.min( item.spanX, countX );
+			final int spanY = Math.min( item.spanY, countY );
+
+			if ( !occupancy.findVacant( spanX, spanY, cellXY ) ) {
+				if ( !empty ) {
+					occupancy.clear();
+					screen++;
+				}
+				occupancy.findVacant( spanX, spanY, cellXY );
+			}
+
+			occupancy.set( cellXY[0], cellXY[1], spanX, spanY, true );
+			empty = false;
+
+			item.screen = screen;
+			item.cellX = cellXY[0];
+			item.cellY = cellXY[1];
+			item.spanX = spanX;
+			item.spanY = spanY;
+		}
+		return screen - firstScreen + 1;
+	}
+}
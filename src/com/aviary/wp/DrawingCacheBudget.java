@@ -0,0 +1,195 @@
+package com.aviary.wp;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import android.graphics.Bitmap;
+import android.util.DisplayMetrics;
+import android.util.Log;
+import android.view.View;
+
+/**
+ * Memory budget shared by the drawing caches of all the workspace pages, the caches of the cells as well as the caches of whole
+ * pages.
+ *
+ * A cache is only built through {@link #acquire(View)}, which first destroys the least recently acquired caches until the new one
+ * fits under the cap. Caches acquired since the last {@link #unpinAll()}, i.e. the ones of the swipe in progress, are never
+ * evicted to make room for another one. Caches are kept after a swipe so the next one does not build them again, the budget keeps
+ * their total size under the cap whatever the grid size and number of pages. Must only be used from the UI thread.
+ */
+class DrawingCacheBudget {
+
+	/**
+	 * Number of screen sized ARGB caches the default cap holds
+	 */
+	static final int DEFAULT_SCREENS = 3;
+
+	private static final class Entry {
+
+		final int bytes;
+		boolean pinned;
+
+		Entry( int bytes ) {
+			this.bytes = bytes;
+			this.pinned = true;
+		}
+	}
+
+	// Cached views, least recently acquired first
+	private final LinkedHashMap<View, Entry> mEntries = new LinkedHashMap<View, Entry>( 64, 0.75f, true );
+
+	private int mMaxBytes;
+	private int mUsedBytes;
+
+	DrawingCacheBudget( int maxBytes ) {
+		mMaxBytes = maxBytes;
+	}
+
+	/**
+	 * Returns the default cap for a display, large enough for {@link #DEFAULT_SCREENS} full screen caches
+	 */
+	static int getDefaultMaxBytes( DisplayMetrics metrics ) {
+		return DEFAULT_SCREENS * metrics.widthPixels * metrics.heightPixels * 4;
+	}
+
+	/**
+	 * Change the cap, caches are destroyed right away if the new one is lower than the current usage, pinned ones included
+	 */
+	void setMaxBytes( int maxBytes ) {
+		mMaxBytes = maxBytes;
+		trimTo( maxBytes, false );
+		trimTo( maxBytes, true );
+	}
+
+	int getMaxBytes() {
+		return mMaxBytes;
+	}
+
+	/**
+	 * Returns the number of bytes held by the caches built through this budget
+	 */
+	int getUsedBytes() {
+		return mUsedBytes;
+	}
+
+	int getCount() {
+		return mEntries.size();
+	}
+
+	/**
+	 * Build the drawing cache of a view, or mark it as the most recently used if it already has one. The cache is pinned until the
+	 * next {@link #unpinAll()}.
+	 *
+	 * @return false if the cache cannot fit under the cap, the view is then left without a cache and draws normally
+	 */
+	boolean acquire( View view ) {
+		final int estimate = view.getWidth() * view.getHeight() * 4;
+		if ( estimate <= 0 ) {
+			release( view );
+			return false;
+		}
+
+		final Entry previous = mEntries.remove( view );
+		if ( previous != null ) {
+			mUsedBytes -= previous.bytes;
+		}
+
+		if ( !trimTo( mMaxBytes - estimate, false ) ) {
+			Log.w( Workspace.TAG, "drawing cache of " + estimate / 1024 + " KB does not fit, " + mUsedBytes / 1024 + " of "
+					+ mMaxBytes / 1024 + " KB pinned" );
+			view.setDrawingCacheEnabled( false );
+			view.destroyDrawingCache();
+			return false;
+		}
+
+		view.setDrawingCacheEnabled( true );
+		view.buildDrawingCache( true );
+		final Bitmap cache = view.getDrawingCache( true );
+		if ( cache == null ) {
+			Log.w( Workspace.TAG, "drawing cache of " + estimate / 1024 + " KB could not be built" );
+			view.setDrawingCacheEnabled( false );
+			return false;
+		}
+
+		final int bytes = cache.getRowBytes() * cache.getHeight();
+		mEntries.put( view, new Entry( bytes ) );
+		mUsedBytes += bytes;
+		return true;
+	}
+
+	/**
+	 * Let the caches acquired so far be evicted again, called once the swipe which needed them is over
+	 */
+	void unpinAll() {
+		for ( Entry entry : mEntries.values() ) {
+			entry.pinned = false;
+		}
+	}
+
+	/**
+	 * Destroy the drawing cache of a view
+	 */
+	void release( View view ) {
+		final Entry entry = mEntries.remove( view );
+		if ( entry != null ) {
+			mUsedBytes -= entry.bytes;
+		}
+		view.setDrawingCacheEnabled( false );
+		view.destroyDrawingCache();
+	}
+
+	/**
+	 * Destroy the caches of the views which have been removed or detached from their parent since they were acquired
+	 */
+	void releaseDetached() {
+		final Iterator<Map.Entry<View, Entry>> iterator = mEntries.entrySet().iterator();
+		while ( iterator.hasNext() ) {
+			final Map.Entry<View, Entry> entry = iterator.next();
+			final View view = entry.getKey();
+			if ( view.getParent() == null ) {
+				iterator.remove();
+				mUsedBytes -= entry.getValue().bytes;
+				view.setDrawingCacheEnabled( false );
+				view.destroyDrawingCache();
+			}
+		}
+	}
+
+	/**
+	 * Destroy all the caches
+	 */
+	void clear() {
+		trimTo( 0, true );
+	}
+
+	/**
+	 * Destroy the least recently acquired caches until the usage is at most the given size
+	 *
+	 * @param evictPinned
+	 *           also destroy the pinned caches
+	 * @return true if the usage is now under the size
+	 */
+	private boolean trimTo( int maxBytes, boolean evictPinned ) {
+		final Iterator<Map.Entry<View, Entry>> iterator = mEntries.entrySet().iterator();
+		while ( mUsedBytes > maxBytes && iterator.hasNext() ) {
+			final Map.Entry<View, Entry> entry = iterator.next();
+			if ( entry.getValue().pinned && !evictPinned ) continue;
+
+			iterator.remove();
+			mUsedBytes -= entry.getValue().bytes;
+
+			final View view = entry.getKey();
+			view.setDrawingCacheEnabled( false );
+			view.destroyDrawingCache();
+		}
+		return mUsedBytes <= maxBytes;
+	}
+
+	/**
+	 * Write the current usage to the log
+	 */
+	void dump() {
+		Log.d( Workspace.TAG, "drawing caches: " + mEntries.size() + " views, " + mUsedBytes / 1024 + " of " + mMaxBytes / 1024
+				+ " KB" );
+	}
+}
@@ -1,6 +1,7 @@
 package com.aviary.wp;
 
 import android.graphics.Canvas;
+import android.graphics.RectF;
 import android.graphics.drawable.Drawable;
 import android.view.animation.AnimationUtils;
 import android.view.animation.DecelerateInterpolator;
@@ -225,12 +226,8 @@ public class EdgeGlow {
 	public boolean draw( Canvas canvas ) {
 		update();
 
-		final int glowHeight = mGlow.getIntrinsicHeight();
-		final float distScale = (float) mHeight / mWidth;
-
 		mGlow.setAlpha( (int) ( Math.max( 0, Math.min( mGlowAlpha, 1 ) ) * 255 ) );
-		mGlow.setBounds( -mWidth, 0, mWidth * 2,
-				(int) Math.min( glowHeight * mGlowScaleY * distScale * 0.6f, mHeight * MAX_GLOW_HEIGHT ) );
+		mGlow.setBounds( -mWidth, 0, mWidth * 2, getGlowBottom( mGlowScaleY ) );
 		mGlow.draw( canvas );
 
 		if ( mEdge != null ) {
@@ -243,6 +240,34 @@ public class EdgeGlow {
 		return mState != STATE_IDLE;
 	}
 
+	/**
+	 * Returns the area the effect can cover until the end of its current animation step, in the coordinates used by
+	 * {@link #draw(Canvas)}. It holds the last frame drawn and the frames following it, so invalidating it after a frame is enough
+	 * to animate the effect.
+	 * 
+	 * @param out
+	 *           receives the bounds, empty when the effect has no size
+	 */
+	public void getBounds( RectF out ) {
+		if ( mWidth <= 0 || mHeight <= 0 ) {
+			out.set( 0, 0, 0, 0 );
+			return;
+		}
+
+		// values move from their current state toward their finish state, the largest of both bounds every coming frame
+		int bottom = Math.max( getGlowBottom( mGlowScaleY ), getGlowBottom( mGlowScaleYFinish ) );
+		if ( mEdge != null ) {
+			final float edgeScaleY = Math.max( mEdgeScaleY, Math.max( mEdgeScaleYStart, mEdgeScaleYFinish ) );
+			bottom = Math.max( bottom, (int) ( mEdge.getIntrinsicHeight() * edgeScaleY ) );
+		}
+		out.set( -mWidth, 0, mWidth * 2, bottom + 1 );
+	}
+
+	private int getGlowBottom( float scaleY ) {
+		final float distScale = (float) mHeight / mWidth;
+		return (int) Math.min( mGlow.getIntrinsicHeight() * scaleY * distScale * 0.6f, mHeight * MAX_GLOW_HEIGHT );
+	}
+
 	private void update() {
 		final long time = AnimationUtils.currentAnimationTimeMillis();
 		final float t = Math.min( ( time - mStartTime ) / mDuration, 1.f );
@@ -21,38 +21,96 @@ import android.graphics.PixelFormat;
 import android.graphics.Bitmap;
 import android.graphics.Canvas;
 import android.graphics.ColorFilter;
+import android.graphics.Paint;
+import android.graphics.Rect;
 
+/**
+ * Drawable of the workspace icons. Draws its bitmap with a single drawBitmap call, without scaling when the bounds match the
+ * bitmap size, and honors alpha, color filter and an optional source rectangle.
+ */
 class FastBitmapDrawable extends Drawable {
 
 	private Bitmap mBitmap;
 	private int mWidth;
 	private int mHeight;
 
+	private final Paint mPaint = new Paint( Paint.FILTER_BITMAP_FLAG );
+	private int mAlpha = 255;
+
+	// Part of the bitmap to draw, the whole bitmap when null
+	private Rect mSrcRect;
+
 	FastBitmapDrawable( Bitmap b ) {
-		mBitmap = b;
-		if ( b != null ) {
-			mWidth = mBitmap.getWidth();
-			mHeight = mBitmap.getHeight();
-		} else {
-			mWidth = mHeight = 0;
-		}
+		setBitmap( b );
 	}
 
 	@Override
 	public void draw( Canvas canvas ) {
-		canvas.drawBitmap( mBitmap, 0.0f, 0.0f, null );
+		final Bitmap bitmap = mBitmap;
+		if ( bitmap == null || mAlpha == 0 ) return;
+
+		final Rect bounds = getBounds();
+		if ( mSrcRect == null && ( bounds.isEmpty() || ( bounds.width() == mWidth && bounds.height() == mHeight ) ) ) {
+			canvas.drawBitmap( bitmap, bounds.left, bounds.top, mPaint );
+		} else if ( !bounds.isEmpty() ) {
+			canvas.drawBitmap( bitmap, mSrcRect, bounds, mPaint );
+		}
 	}
 
 	@Override
 	public int getOpacity() {
-		return PixelFormat.TRANSLUCENT;
+		if ( mBitmap == null || mAlpha == 0 ) return PixelFormat.TRANSPARENT;
+		if ( mAlpha < 255 || mBitmap.hasAlpha() || mPaint.getColorFilter() != null ) return PixelFormat.TRANSLUCENT;
+		return PixelFormat.OPAQUE;
+	}
+
+	@Override
+	public void setAlpha( int alpha ) {
+		if ( alpha != mAlpha ) {
+			mAlpha = alpha;
+			mPaint.setAlpha( alpha );
+			invalidateSelf();
+		}
+	}
+
+	public int getAlpha() {
+		return mAlpha;
 	}
 
 	@Override
-	public void setAlpha( int alpha ) {}
+	public void setColorFilter( ColorFilter cf ) {
+		mPaint.setColorFilter( cf );
+		invalidateSelf();
+	}
+
+	@Override
+	public void setFilterBitmap( boolean filter ) {
+		mPaint.setFilterBitmap( filter );
+		invalidateSelf();
+	}
 
 	@Override
-	public void setColorFilter( ColorFilter cf ) {}
+	public void setDither( boolean dither ) {
+		mPaint.setDither( dither );
+		invalidateSelf();
+	}
+
+	/**
+	 * Draw only a part of the bitmap, i.e. one icon of a sheet. The intrinsic size becomes the size of that part.
+	 * 
+	 * @param src
+	 *           part of the bitmap to draw, or null for the whole bitmap
+	 */
+	public void setSourceRect( Rect src ) {
+		if ( src == null ) {
+			mSrcRect = null;
+		} else {
+			if ( mSrcRect == null ) mSrcRect = new Rect();
+			mSrcRect.set( src );
+		}
+		updateSize();
+		invalidateSelf();
+	}
 
 	@Override
 	public int getIntrinsicWidth() {
@@ -76,7 +134,14 @@ class FastBitmapDrawable extends Drawable {
 
 	public void setBitmap( Bitmap b ) {
 		mBitmap = b;
-		if ( b != null ) {
+		updateSize();
+	}
+
+	private void updateSize() {
+		if ( mSrcRect != null ) {
+			mWidth = mSrcRect.width();
+			mHeight = mSrcRect.height();
+		} else if ( mBitmap != null ) {
 			mWidth = mBitmap.getWidth();
 			mHeight = mBitmap.getHeight();
 		} else {
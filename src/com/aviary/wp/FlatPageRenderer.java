@@ -0,0 +1,91 @@
+package com.aviary.wp;
+
+import android.content.Context;
+import android.content.res.Resources;
+import android.graphics.Canvas;
+import android.graphics.Rect;
+import android.graphics.drawable.Drawable;
+import android.text.TextPaint;
+
+/**
+ * Draws the shortcuts of a {@link CellLayout} page in flat mode, the same way {@link CellIconView} draws a single one, and creates
+ * the real views the page needs on demand. One renderer is shared by all the pages.
+ */
+class FlatPageRenderer {
+
+	// Cell paddings, in dip, the same as application_boxed.xml
+	private static final float PADDING_LEFT = 2;
+	private static final float PADDING_RIGHT = 2;
+	private static final float PADDING_TOP = 5;
+	private static final float PADDING_BOTTOM = 2;
+
+	private final LabelCache mLabelCache;
+	private final TextPaint mPaint;
+	private final FastBitmapDrawable mIcon = new FastBitmapDrawable( null );
+	private final Drawable mPressedBackground;
+
+	private final int mPaddingLeft;
+	private final int mPaddingRight;
+	private final int mPaddingTop;
+	private final int mPaddingBottom;
+
+	FlatPageRenderer( Context context, LabelCache labelCache ) {
+		final Resources res = context.getResources();
+		final float density = res.getDisplayMetrics().density;
+
+		mLabelCache = labelCache;
+		mPaint = CellIconView.createLabelPaint( res );
+		mPressedBackground = res.getDrawable( R.drawable.pressed_application_background );
+
+		mPaddingLeft = (int) ( PADDING_LEFT * density + 0.5f );
+		mPaddingRight = (int) ( PADDING_RIGHT * density + 0.5f );
+		mPaddingTop = (int) ( PADDING_TOP * density + 0.5f );
+		mPaddingBottom = (int) ( PADDING_BOTTOM * density + 0.5f );
+	}
+
+	/**
+	 * Returns the width available to a label in a cell of the given width
+	 */
+	int getLabelWidth( int cellWidth ) {
+		return cellWidth - mPaddingLeft - mPaddingRight;
+	}
+
+	/**
+	 * Draw a shortcut in the given cell bounds
+	 */
+	void draw( Canvas canvas, ShortcutInfo item, Rect bounds, boolean pressed ) {
+		if ( pressed ) {
+			mPressedBackground.setBounds( bounds );
+			mPressedBackground.draw( canvas );
+		}
+
+		int top = bounds.top + mPaddingTop;
+		if ( item.icon != null ) {
+			final FastBitmapDrawable icon = mIcon;
+			icon.setBitmap( item.icon );
+			final int iconWidth = icon.getIntrinsicWidth();
+			final int left = bounds.left + ( bounds.width() - iconWidth ) / 2;
+			icon.setBounds( left, top, left + iconWidth, top + icon.getIntrinsicHeight() );
+			icon.draw( canvas );
+			top += icon.getIntrinsicHeight();
+		}
+
+		if ( item.title == null ) return;
+
+		final int labelWidth = getLabelWidth( bounds.width() );
+		final LabelCache.Label label = mLabelCache.get( item.title, labelWidth );
+		CellIconView.drawLabel( canvas, label, mPaint, bounds.left + mPaddingLeft + labelWidth / 2f, top );
+	}
+
+	/**
+	 * Create the real view of a shortcut, i.e. when it has to take the focus
+	 */
+	CellIconView createView( Context context, ShortcutInfo item ) {
+		final CellIconView view = new CellIconView( context );
+		view.setPadding( mPaddingLeft, mPaddingTop, mPaddingRight, mPaddingBottom );
+		view.setLabelCache( mLabelCache );
+		view.bind( item.icon, item.title );
+		view.setTag( item );
+		return view;
+	}
+}
@@ -0,0 +1,201 @@
+package com.aviary.wp;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Process;
+import android.text.TextPaint;
+import android.text.TextUtils;
+
+/**
+ * Cache of cell labels broken into at most two lines, the second one ellipsized, for a given text paint and width.
+ *
+ * One cache serves one paint: labels are keyed by text and width only, the text size and typeface are the ones of the paint given
+ * to the constructor, later changes to that paint are not seen. Views drawing with another paint need their own cache.
+ *
+ * Labels can be laid out ahead of time on a background thread with {@link #prefetch(CharSequence, int)}, binding a label which
+ * is already cached does not measure any text. The least recently used labels are dropped past {@link #MAX_ENTRIES}.
+ */
+class LabelCache {
+
+	static final int MAX_ENTRIES = 256;
+
+	/**
+	 * A label broken into lines, ready to be drawn
+	 */
+	static final class Label {
+
+		/** First line */
+		final String line1;
+
+		/** Second line, ellipsized, or null */
+		final String line2;
+
+		/** Width of each line, in pixels */
+		final float width1;
+		final float width2;
+
+		Label( String line1, String line2, float width1, float width2 ) {
+			this.line1 = line1;
+			this.line2 = line2;
+			this.width1 = width1;
+			this.width2 = width2;
+		}
+
+		int getLineCount() {
+			return line2 == null ? 1 : 2;
+		}
+	}
+
+	private static final class Key {
+
+		String text;
+		int width;
+
+		Key( String text, int width ) {
+			this.text = text;
+			this.width = width;
+		}
+
+		@Override
+		public int hashCode() {
+			return text.hashCode() * 31 + width;
+		}
+
+		@Override
+		public boolean equals( Object o ) {
+			if ( !( o instanceof Key ) ) return false;
+			final Key other = (Key) o;
+			return width == other.width && text.equals( other.text );
+		}
+	}
+
+	private HandlerThread mWorkerThread;
+	private Handler mWorker;
+
+	private final LinkedHashMap<Key, Label> mLabels = new LinkedHashMap<Key, Label>( 64, 0.75f, true ) {
+
+		@Override
+		protected boolean removeEldestEntry( Map.Entry<Key, Label> eldest ) {
+			return size() > MAX_ENTRIES;
+		}
+	};
+
+	// Paints are not thread safe, each thread measures with its own copy
+	private final TextPaint mPaint;
+	private final TextPaint mWorkerPaint;
+
+	// Reused to look labels up from the UI thread
+	private final Key mLookupKey = new Key( "", 0 );
+
+	LabelCache( TextPaint paint ) {
+		mPaint = new TextPaint( paint );
+		mWorkerPaint = new TextPaint( paint );
+	}
+
+	/**
+	 * Returns the label laid out for the given width, laying it out on the calling thread if it is not cached yet. Must be called
+	 * from the UI thread.
+	 */
+	Label get( CharSequence text, int width ) {
+		final String string = text == null ? "" : text.toString();
+		Label label;
+		synchronized ( mLabels ) {
+			mLookupKey.text = string;
+			mLookupKey.width = width;
+			label = mLabels.get( mLookupKey );
+		}
+		if ( label == null ) {
+			label = layout( mPaint, string, width );
+			synchronized ( mLabels ) {
+				mLabels.put( new Key( string, width ), label );
+			}
+		}
+		return label;
+	}
+
+	/**
+	 * Lay the label out for the given width on the background thread, if it is not cached yet. Must be called from the UI thread.
+	 */
+	void prefetch( CharSequence text, final int width ) {
+		if ( text == null || width <= 0 ) return;
+		final String string = text.toString();
+		synchronized ( mLabels ) {
+			mLookupKey.text = string;
+			mLookupKey.width = width;
+			if ( mLabels.containsKey( mLookupKey ) ) return;
+		}
+
+		getWorker().post( new Runnable() {
+
+			@Override
+			public void run() {
+				final Key key = new Key( string, width );
+				synchronized ( mLabels ) {
+					if ( mLabels.containsKey( key ) ) return;
+				}
+				final Label label = layout( mWorkerPaint, string, width );
+				synchronized ( mLabels ) {
+					mLabels.put( key, label );
+				}
+			}
+		} );
+	}
+
+	void clear() {
+		synchronized ( mLabels ) {
+			mLabels.clear();
+		}
+	}
+
+	/**
+	 * Stop the background thread and drop the labels, the cache must not be used anymore
+	 */
+	void release() {
+		if ( mWorkerThread != null ) {
+			mWorkerThread.quit();
+			mWorkerThread = null;
+			mWorker = null;
+		}
+		clear();
+	}
+
+	private Handler getWorker() {
+		if ( mWorker == null ) {
+			mWorkerThread = new HandlerThread( "label-cache", Process.THREAD_PRIORITY_BACKGROUND );
+			mWorkerThread.start();
+			mWorker = new Handler( mWorkerThread.getLooper() );
+		}
+		return mWorker;
+	}
+
+	/**
+	 * Break a label into two lines at most, preferably after a space, and ellipsize the second line
+	 */
+	static Label layout( TextPaint paint, String text, int width ) {
+		final int length = text.length();
+		if ( width <= 0 || length == 0 ) {
+			return new Label( text, null, paint.measureText( text ), 0 );
+		}
+
+		final int fit = paint.breakText( text, true, width, null );
+		if ( fit >= length ) {
+			return new Label( text, null, paint.measureText( text ), 0 );
+		}
+
+		int end = text.lastIndexOf( ' ', fit );
+		if ( end <= 0 ) {
+			end = Math.max( 1, fit );
+		}
+
+		final String line1 = text.substring( 0, end );
+		final String rest = text.substring( end ).trim();
+		if ( rest.length() == 0 ) {
+			return new Label( line1, null, paint.measureText( line1 ), 0 );
+		}
+
+		final String line2 = TextUtils.ellipsize( rest, paint, width, TextUtils.TruncateAt.END ).toString();
+		return new Label( line1, line2, paint.measureText( line1 ), paint.measureText( line2 ) );
+	}
+}
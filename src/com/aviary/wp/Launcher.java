@@ -1,12 +1,19 @@
 package com.aviary.wp;
 
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
 import android.app.Activity;
+import android.content.ActivityNotFoundException;
 import android.content.Context;
 import android.content.Intent;
 import android.content.pm.ApplicationInfo;
 import android.content.pm.PackageManager;
 import android.content.res.Configuration;
+import android.graphics.Bitmap;
 import android.graphics.drawable.Drawable;
 import android.os.Bundle;
 import android.util.DisplayMetrics;
@@ -15,13 +22,23 @@ import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
 import android.widget.ArrayAdapter;
-import android.widget.TextView;
-import com.aviary.wp.CellLayout.CellInfo;
 
 public class Launcher extends Activity {
 
+	/**
+	 * Set to true to record touch-to-frame latencies, they are written to {@link #LATENCY_TRACE_FILE} when the activity is paused
+	 */
+	static final boolean TRACE_TOUCH_LATENCY = false;
+	static final String LATENCY_TRACE_FILE = "touch_latency.csv";
+
+	/**
+	 * Set to true to draw the workspace pages in flat mode, see {@link CellLayout#setFlatItems(ArrayList, FlatPageRenderer)}
+	 */
+	static final boolean FLAT_PAGES = false;
+
 	private Workspace mWorkspace;
 	private WorkspaceIndicator mIndicator;
+	private WorkspaceAdapter mAdapter;
 
 	@Override
 	public void onCreate( Bundle savedInstanceState ) {
@@ -31,6 +48,31 @@ public class Launcher extends Activity {
 		initAdapter();
 	}
 
+	@Override
+	protected void onDestroy() {
+		super.onDestroy();
+
+		if ( mAdapter != null ) {
+			mAdapter.release();
+			mAdapter = null;
+		}
+	}
+
+	@Override
+	protected void onPause() {
+		super.onPause();
+
+		if ( TRACE_TOUCH_LATENCY ) {
+			final File file = new File( getFilesDir(), LATENCY_TRACE_FILE );
+			try {
+				mWorkspace.exportLatencyTrace( file );
+				Log.i( Workspace.TAG, "touch latency written to " + file );
+			} catch ( IOException e ) {
+				Log.e( Workspace.TAG, "failed to write touch latency", e );
+			}
+		}
+	}
+
 	public void previousScreen( View v ) {
 		mWorkspace.scrollLeft();
 	}
@@ -67,6 +109,7 @@ public class Launcher extends Activity {
 
 		final Workspace workspace = mWorkspace;
 		workspace.setHapticFeedbackEnabled( false );
+		workspace.setLatencyTracingEnabled( TRACE_TOUCH_LATENCY );
 		mWorkspace.setIndicator( mIndicator );
 	}
 
@@ -81,9 +124,23 @@ public class Launcher extends Activity {
 		List<ApplicationInfo> apps = getPackageManager().getInstalledApplications( PackageManager.GET_META_DATA );
 		WorkspaceAdapter adapter = new WorkspaceAdapter( this, R.layout.workspace_screen, apps.subList( 0, 40 ) );
 		mWorkspace.setAdapter( adapter );
+
+		if ( mAdapter != null ) {
+			mAdapter.release();
+		}
+		mAdapter = adapter;
 	}
 
-	public void startActivitySafely( Intent intent, String string ) {}
+	public void startActivitySafely( Intent intent, String string ) {
+		if ( intent == null ) return;
+		try {
+			startActivity( intent.addFlags( Intent.FLAG_ACTIVITY_NEW_TASK ) );
+		} catch ( ActivityNotFoundException e ) {
+			Log.e( Workspace.TAG, "unable to launch " + string, e );
+		} catch ( SecurityException e ) {
+			Log.e( Workspace.TAG, "not allowed to launch " + string, e );
+		}
+	}
 
 	public static void setScreen( int mCurrentScreen ) {}
 
@@ -93,6 +150,23 @@ public class Launcher extends Activity {
 		PackageManager pm;
 		private LayoutInflater mInflater;
 		private int nCellsPerScreen = 4;
+		private View[] mCellViews;
+		private CellLayout.LayoutParams[] mCellParams;
+		private final HashMap<String, Bitmap> mIcons = new HashMap<String, Bitmap>();
+		private final HashMap<String, CharSequence> mLabels = new HashMap<String, CharSequence>();
+		private LabelCache mLabelCache;
+		private FlatPageRenderer mFlatRenderer;
+		private final HashMap<String, ShortcutInfo> mShortcuts = new HashMap<String, ShortcutInfo>();
+		private ItemInfo[] mPageItems;
+		private final CellReflow mReflow = new CellReflow();
+
+		private final CellLayout.OnItemClickListener mItemClickListener = new CellLayout.OnItemClickListener() {
+
+			@Override
+			public void onItemClick( CellLayout layout, ShortcutInfo item ) {
+				startActivitySafely( item.intent, String.valueOf( item.title ) );
+			}
+		};
 
 		public WorkspaceAdapter( Context context, int textViewResourceId, List<ApplicationInfo> objects ) {
 			super( context, textViewResourceId, objects );
@@ -118,10 +192,89 @@ public class Launcher extends Activity {
 			return super.getCount();
 		}
 
+		/**
+		 * Stop the background work of the adapter, called once it is replaced or the activity is destroyed
+		 */
+		void release() {
+			if ( mLabelCache != null ) {
+				mLabelCache.release();
+			}
+		}
+
+		/**
+		 * Fill an empty screen with its cells, column by column, in a single layout pass
+		 */
+		private void addCells( CellLayout cell ) {
+			final int rows = cell.getCountY();
+			final int count = Math.min( nCellsPerScreen, cell.getCountX() * rows );
+
+			if ( mCellViews == null || mCellViews.length < count ) {
+				mCellViews = new View[count];
+				mCellParams = new CellLayout.LayoutParams[count];
+			}
+
+			for ( int i = 0; i < count; i++ ) {
+				mCellViews[i] = mInflater.inflate( R.layout.application_boxed, cell, false );
+				mCellParams[i] = new CellLayout.LayoutParams( i / rows, i % rows, 1, 1 );
+			}
+
+			if ( !cell.addViews( mCellViews, mCellParams, count ) ) {
+				Log.w( Workspace.TAG, "addCells: cells already occupied" );
+			}
+			Arrays.fill( mCellViews, null );
+		}
+
+		/**
+		 * Returns the icon of an application at the standard icon size, loading it only once
+		 */
+		private Bitmap getIcon( ApplicationInfo appInfo ) {
+			Bitmap icon = mIcons.get( appInfo.packageName );
+			if ( icon == null ) {
+				Drawable drawable = appInfo.loadIcon( pm );
+				icon = Utilities.createIconBitmap( drawable, getContext() );
+				mIcons.put( appInfo.packageName, icon );
+			}
+			return icon;
+		}
+
+		private CharSequence getLabel( ApplicationInfo appInfo ) {
+			CharSequence label = mLabels.get( appInfo.packageName );
+			if ( label == null ) {
+				label = appInfo.loadLabel( pm );
+				mLabels.put( appInfo.packageName, label );
+			}
+			return label;
+		}
+
+		private ShortcutInfo getShortcut( ApplicationInfo appInfo ) {
+			ShortcutInfo shortcut = mShortcuts.get( appInfo.packageName );
+			if ( shortcut == null ) {
+				shortcut = new ShortcutInfo();
+				shortcut.title = getLabel( appInfo );
+				shortcut.icon = getIcon( appInfo );
+				shortcut.intent = pm.getLaunchIntentForPackage( appInfo.packageName );
+				mShortcuts.put( appInfo.packageName, shortcut );
+			}
+			return shortcut;
+		}
+
+		/**
+		 * Lay the labels of a screen out in the background so binding it later does not measure text. The width must be the one
+		 * the cells will ask for, so nothing is prefetched until the page has been measured.
+		 */
+		private void prefetchLabels( int position, int width ) {
+			if ( width <= 0 || position < 0 || position >= getCount() ) return;
+			final int first = position * nCellsPerScreen;
+			final int last = Math.min( first + nCellsPerScreen, getRealCount() );
+			for ( int i = first; i < last; i++ ) {
+				mLabelCache.prefetch( getLabel( getItem( i ) ), width );
+			}
+		}
+
 		@Override
 		public View getView( int position, View convertView, ViewGroup parent ) {
 
-			Log.i( Workspace.TAG, "WorkspaceAdapter.getView: " + position );
+			if ( WorkspaceTrace.ENABLED ) WorkspaceTrace.trace( WorkspaceTrace.ADAPTER_GET_VIEW, position, convertView != null ? 1 : 0 );
 
 			if ( convertView == null ) {
 				convertView = mInflater.inflate( screenId, mWorkspace, false );
@@ -130,37 +283,88 @@ public class Launcher extends Activity {
 			CellLayout cell = (CellLayout) convertView;
 			cell.setNumCols( nCellsPerScreen );
 
+			if ( FLAT_PAGES ) {
+				bindFlatPage( cell, position );
+				return convertView;
+			}
+
+			if ( cell.getChildCount() == 0 ) {
+				addCells( cell );
+			}
+
 			int index = position * nCellsPerScreen;
 			int realCount = getRealCount();
 
-			for ( int i = 0; i < nCellsPerScreen; i++ ) {
-				CellInfo cellInfo = cell.findVacantCell( 1, 1 );
-				TextView text;
+			final int cells = Math.min( nCellsPerScreen, cell.getChildCount() );
+			if ( cells == 0 ) return convertView;
 
-				if ( cellInfo == null ) {
-					text = (TextView) cell.getChildAt( i );
-				} else {
-					text = (TextView) mInflater.inflate( R.layout.application_boxed, cell, false );
-					CellLayout.LayoutParams lp = new CellLayout.LayoutParams( cellInfo.cellX, cellInfo.cellY, cellInfo.spanH,
-							cellInfo.spanV );
-					cell.addView( text, i, lp );
-				}
+			final CellIconView first = (CellIconView) cell.getChildAt( 0 );
+			if ( mLabelCache == null ) {
+				mLabelCache = new LabelCache( first.getPaint() );
+			}
+			final int cellWidth = cell.getCellWidth();
+			final int labelWidth = cellWidth > 0 ? cellWidth - first.getPaddingLeft() - first.getPaddingRight() : 0;
+
+			for ( int i = 0; i < cells; i++ ) {
+				CellIconView view = (CellIconView) cell.getChildAt( i );
 
 				if ( index + i < realCount ) {
 					ApplicationInfo appInfo = getItem( index + i );
-					CharSequence label = appInfo.loadLabel( pm );
-					Drawable bm = appInfo.loadIcon( pm );
-
-					text.setCompoundDrawablesWithIntrinsicBounds( null, bm, null, null ); // new
-					text.setText( label );
-					text.setClickable( true );
-					text.setFocusable( true );
-					text.setVisibility( View.VISIBLE );
+
+					view.setLabelCache( mLabelCache );
+					view.bind( getIcon( appInfo ), getLabel( appInfo ) );
+					view.setVisibility( View.VISIBLE );
 				} else {
-					text.setVisibility( View.INVISIBLE );
+					view.setVisibility( View.INVISIBLE );
 				}
 			}
+
+			prefetchLabels( position + 1, labelWidth );
+			prefetchLabels( position - 1, labelWidth );
 			return convertView;
 		}
+
+		/**
+		 * Bind a screen in flat mode: its shortcuts are placed column by column and drawn by the page, no cell view is inflated
+		 */
+		private void bindFlatPage( CellLayout cell, int position ) {
+			if ( mFlatRenderer == null ) {
+				if ( mLabelCache == null ) {
+					mLabelCache = new LabelCache( CellIconView.createLabelPaint( getResources() ) );
+				}
+				mFlatRenderer = new FlatPageRenderer( getContext(), mLabelCache );
+			}
+
+			final int first = position * nCellsPerScreen;
+			final int count = Math.max( 0, Math.min( Math.min( nCellsPerScreen, cell.getCountX() * cell.getCountY() ), getRealCount()
+					- first ) );
+
+			if ( mPageItems == null || mPageItems.length < count ) {
+				mPageItems = new ItemInfo[count];
+			}
+
+			// a recycled page hands its list back, it is refilled instead of allocating one per bind
+			ArrayList<ShortcutInfo> items = cell.getFlatItems();
+			if ( items == null ) {
+				items = new ArrayList<ShortcutInfo>( nCellsPerScreen );
+			} else {
+				items.clear();
+			}
+			for ( int i = 0; i < count; i++ ) {
+				final ShortcutInfo shortcut = getShortcut( getItem( first + i ) );
+				items.add( shortcut );
+				mPageItems[i] = shortcut;
+			}
+			mReflow.paginate( mPageItems, count, cell.getCountX(), cell.getCountY(), position );
+			Arrays.fill( mPageItems, null );
+
+			cell.setFlatItems( items, mFlatRenderer );
+			cell.setOnItemClickListener( mItemClickListener );
+
+			final int cellWidth = cell.getCellWidth();
+			final int labelWidth = cellWidth > 0 ? mFlatRenderer.getLabelWidth( cellWidth ) : 0;
+			prefetchLabels( position + 1, labelWidth );
+			prefetchLabels( position - 1, labelWidth );
+		}
 	}
 }
\ No newline at end of file
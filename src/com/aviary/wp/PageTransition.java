@@ -0,0 +1,98 @@
+package com.aviary.wp;
+
+import android.graphics.Matrix;
+import android.view.View;
+import android.view.animation.Transformation;
+
+/**
+ * Effect applied to the workspace pages while they scroll, see {@link Workspace#setPageTransition(PageTransition)}.
+ *
+ * Pages are never moved, measured or laid out again: the effect only fills the static transformation the workspace draws each
+ * page with, so a frame of a transition costs the same as a frame of the plain slide. Effects changing the alpha of the pages
+ * must say so with {@link #usesAlpha()}, the pages are then drawn from their drawing cache while the workspace scrolls instead
+ * of through an offscreen layer each frame.
+ */
+abstract class PageTransition {
+
+	/**
+	 * Fill the transformation of a page.
+	 *
+	 * @param page
+	 *           the page
+	 * @param offset
+	 *           position of the page relative to the visible area, in pages: 0 when it fills the screen, negative when it is
+	 *           scrolled to the left, between -1 and 1 exclusive
+	 * @param t
+	 *           transformation to fill, cleared to the identity
+	 */
+	abstract void transform( View page, float offset, Transformation t );
+
+	/**
+	 * Returns true if the effect changes the alpha of the pages
+	 */
+	boolean usesAlpha() {
+		return false;
+	}
+
+	/**
+	 * Pages stay in place and cross fade
+	 */
+	static final PageTransition FADE = new PageTransition() {
+
+		@Override
+		void transform( View page, float offset, Transformation t ) {
+			t.getMatrix().setTranslate( -offset * page.getWidth(), 0 );
+			t.setAlpha( 1 - Math.abs( offset ) );
+		}
+
+		@Override
+		boolean usesAlpha() {
+			return true;
+		}
+	};
+
+	/**
+	 * Pages slide and shrink towards their center as they leave the screen
+	 */
+	static final PageTransition ZOOM = new PageTransition() {
+
+		@Override
+		void transform( View page, float offset, Transformation t ) {
+			final float scale = 1 - 0.25f * Math.abs( offset );
+			t.getMatrix().setScale( scale, scale, page.getWidth() / 2f, page.getHeight() / 2f );
+		}
+	};
+
+	/**
+	 * The page leaving to the left stays in place, shrinking and fading, while the next page slides over it
+	 */
+	static final PageTransition STACK = new PageTransition() {
+
+		@Override
+		void transform( View page, float offset, Transformation t ) {
+			if ( offset >= 0 ) return;
+
+			final float scale = 1 + 0.25f * offset;
+			final Matrix matrix = t.getMatrix();
+			matrix.setScale( scale, scale, page.getWidth() / 2f, page.getHeight() / 2f );
+			matrix.postTranslate( -offset * page.getWidth(), 0 );
+			t.setAlpha( 1 + offset );
+		}
+
+		@Override
+		boolean usesAlpha() {
+			return true;
+		}
+	};
+
+	/**
+	 * Pages turn around a point below the workspace, like the spokes of a wheel
+	 */
+	static final PageTransition ROTATE = new PageTransition() {
+
+		@Override
+		void transform( View page, float offset, Transformation t ) {
+			t.getMatrix().setRotate( offset * 20, page.getWidth() / 2f, page.getHeight() * 2 );
+		}
+	};
+}
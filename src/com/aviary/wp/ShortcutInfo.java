@@ -0,0 +1,25 @@
+package com.aviary.wp;
+
+import android.content.Intent;
+import android.graphics.Bitmap;
+
+/**
+ * An application shortcut of the workspace, drawn from this model when its page is in flat mode.
+ */
+class ShortcutInfo extends ItemInfo {
+
+	/**
+	 * The application name.
+	 */
+	CharSequence title;
+
+	/**
+	 * The application icon, at the standard icon size.
+	 */
+	Bitmap icon;
+
+	/**
+	 * The intent started when the shortcut is clicked.
+	 */
+	Intent intent;
+}
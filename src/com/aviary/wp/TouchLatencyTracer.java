@@ -0,0 +1,186 @@
+package com.aviary.wp;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.Arrays;
+import android.os.SystemClock;
+
+/**
+ * Measures the time between a touch event reaching the {@link Workspace} and the frame in which the scroll it caused is drawn.
+ *
+ * Events are tagged with their {@link android.view.MotionEvent#getEventTime()}, a frame is correlated with them once a
+ * <code>scrollTo</code> happened before it was drawn, and the resulting latencies are kept in a fixed size rolling window.
+ * Nothing is allocated while tracing.
+ */
+class TouchLatencyTracer {
+
+	/**
+	 * Default number of latency samples kept in the rolling window
+	 */
+	static final int DEFAULT_CAPACITY = 512;
+
+	// Maximum number of events waiting for a frame. Further events only update the newest slot.
+	private static final int MAX_PENDING = 16;
+
+	private final long[] mPending = new long[MAX_PENDING];
+	private int mPendingCount;
+	private boolean mScrolled;
+
+	private final long[] mEventTimes;
+	private final long[] mFrameTimes;
+	private final int[] mLatencies;
+	private int mHead;
+	private int mSize;
+	private long mTotalSamples;
+
+	TouchLatencyTracer() {
+		this( DEFAULT_CAPACITY );
+	}
+
+	TouchLatencyTracer( int capacity ) {
+		if ( capacity < 1 ) {
+			throw new IllegalArgumentException( "capacity must be > 0" );
+		}
+		mEventTimes = new long[capacity];
+		mFrameTimes = new long[capacity];
+		mLatencies = new int[capacity];
+	}
+
+	/**
+	 * Call when a motion event that can move the workspace has been received.
+	 *
+	 * @param eventTime
+	 *           the event time, in the {@link SystemClock#uptimeMillis()} time base
+	 */
+	void onTouchEvent( long eventTime ) {
+		if ( mPendingCount < MAX_PENDING ) {
+			mPending[mPendingCount++] = eventTime;
+		} else {
+			mPending[MAX_PENDING - 1] = eventTime;
+		}
+	}
+
+	/**
+	 * Call when the workspace scroll position has been changed.
+	 */
+	void onScroll() {
+		if ( mPendingCount > 0 ) {
+			mScrolled = true;
+		}
+	}
+
+	/**
+	 * Call when a frame has been drawn. Every pending event is resolved against this frame if a scroll happened since they were
+	 * received.
+	 */
+	void onFrameDrawn() {
+		if ( !mScrolled ) return;
+
+		final long now = SystemClock.uptimeMillis();
+		final long[] pending = mPending;
+		for ( int i = 0; i < mPendingCount; i++ ) {
+			addSample( pending[i], now );
+		}
+		mPendingCount = 0;
+		mScrolled = false;
+	}
+
+	/**
+	 * Drop the events still waiting for a frame, i.e. when the gesture has been released or cancelled.
+	 */
+	void cancelPending() {
+		mPendingCount = 0;
+		mScrolled = false;
+	}
+
+	private void addSample( long eventTime, long frameTime ) {
+		final int capacity = mLatencies.length;
+		mEventTimes[mHead] = eventTime;
+		mFrameTimes[mHead] = frameTime;
+		mLatencies[mHead] = (int) ( frameTime - eventTime );
+		mHead = ( mHead + 1 ) % capacity;
+		if ( mSize < capacity ) mSize++;
+		mTotalSamples++;
+	}
+
+	void reset() {
+		cancelPending();
+		mHead = 0;
+		mSize = 0;
+		mTotalSamples = 0;
+	}
+
+	/**
+	 * @return the number of samples currently in the rolling window
+	 */
+	int getSampleCount() {
+		return mSize;
+	}
+
+	/**
+	 * @return the number of samples recorded since the last {@link #reset()}
+	 */
+	long getTotalSampleCount() {
+		return mTotalSamples;
+	}
+
+	/**
+	 * Returns the given percentile of the latencies in the rolling window.
+	 *
+	 * @param percentile
+	 *           a value between 0 and 100
+	 * @return the latency in milliseconds, or -1 if there are no samples
+	 */
+	int getPercentile( float percentile ) {
+		if ( mSize == 0 ) return -1;
+		final int[] sorted = sortedLatencies();
+		int index = (int) Math.ceil( percentile / 100f * mSize ) - 1;
+		index = Math.max( 0, Math.min( index, mSize - 1 ) );
+		return sorted[index];
+	}
+
+	/**
+	 * @return the mean latency of the rolling window in milliseconds, or -1 if there are no samples
+	 */
+	float getMean() {
+		if ( mSize == 0 ) return -1;
+		long sum = 0;
+		for ( int i = 0; i < mSize; i++ ) {
+			sum += mLatencies[i];
+		}
+		return (float) sum / mSize;
+	}
+
+	private int[] sortedLatencies() {
+		final int[] sorted = new int[mSize];
+		System.arraycopy( mLatencies, 0, sorted, 0, mSize );
+		Arrays.sort( sorted );
+		return sorted;
+	}
+
+	/**
+	 * Writes the rolling window, oldest sample first, followed by a summary, as comma separated values.
+	 *
+	 * @param file
+	 *           destination file, overwritten if it exists
+	 * @throws IOException
+	 */
+	void export( File file ) throws IOException {
+		final BufferedWriter writer = new BufferedWriter( new FileWriter( file ) );
+		try {
+			writer.write( "event_time,frame_time,latency_ms\n" );
+			final int capacity = mLatencies.length;
+			final int start = mSize < capacity ? 0 : mHead;
+			for ( int i = 0; i < mSize; i++ ) {
+				final int index = ( start + i ) % capacity;
+				writer.write( mEventTimes[index] + "," + mFrameTimes[index] + "," + mLatencies[index] + "\n" );
+			}
+			writer.write( "# samples=" + mSize + ", total=" + mTotalSamples + ", mean=" + getMean() + ", p50=" + getPercentile( 50 )
+					+ ", p90=" + getPercentile( 90 ) + ", p99=" + getPercentile( 99 ) + "\n" );
+		} finally {
+			writer.close();
+		}
+	}
+}
@@ -0,0 +1,72 @@
+package com.aviary.wp;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Rect;
+import android.graphics.drawable.BitmapDrawable;
+import android.graphics.drawable.Drawable;
+
+/**
+ * Various utilities shared amongst the workspace classes.
+ */
+final class Utilities {
+
+	private static int sIconSize = -1;
+
+	private static final Canvas sCanvas = new Canvas();
+	private static final Rect sOldBounds = new Rect();
+
+	private Utilities() {}
+
+	/**
+	 * Returns a bitmap of the standard icon size holding the icon, scaled down and centered if needed. Bitmap icons which already
+	 * have the right size are returned as they are.
+	 */
+	static Bitmap createIconBitmap( Drawable icon, Context context ) {
+		synchronized ( sCanvas ) {
+			if ( sIconSize == -1 ) {
+				sIconSize = context.getResources().getDimensionPixelSize( android.R.dimen.app_icon_size );
+			}
+			final int size = sIconSize;
+
+			if ( icon instanceof FastBitmapDrawable ) {
+				final Bitmap bitmap = ( (FastBitmapDrawable) icon ).getBitmap();
+				if ( bitmap != null && bitmap.getWidth() == size && bitmap.getHeight() == size ) return bitmap;
+			} else if ( icon instanceof BitmapDrawable ) {
+				final Bitmap bitmap = ( (BitmapDrawable) icon ).getBitmap();
+				if ( bitmap != null && bitmap.getWidth() == size && bitmap.getHeight() == size ) return bitmap;
+			}
+
+			int width = size;
+			int height = size;
+			final int sourceWidth = icon.getIntrinsicWidth();
+			final int sourceHeight = icon.getIntrinsicHeight();
+			if ( sourceWidth > 0 && sourceHeight > 0 ) {
+				// keep the aspect ratio, never scale up
+				final float ratio = (float) sourceWidth / sourceHeight;
+				if ( sourceWidth > sourceHeight ) {
+					height = (int) ( width / ratio );
+				} else if ( sourceHeight > sourceWidth ) {
+					width = (int) ( height * ratio );
+				}
+				width = Math.min( width, Math.max( sourceWidth, 1 ) );
+				height = Math.min( height, Math.max( sourceHeight, 1 ) );
+			}
+
+			final Bitmap bitmap = Bitmap.createBitmap( size, size, Bitmap.Config.ARGB_8888 );
+			final Canvas canvas = sCanvas;
+			canvas.setBitmap( bitmap );
+
+			final int left = ( size - width ) / 2;
+			final int top = ( size - height ) / 2;
+
+			sOldBounds.set( icon.getBounds() );
+			icon.setBounds( left, top, left + width, top + height );
+			icon.draw( canvas );
+			icon.setBounds( sOldBounds );
+
+			return bitmap;
+		}
+	}
+}
@@ -16,13 +16,17 @@
 
 package com.aviary.wp;
 
+import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
 import android.content.Context;
 import android.content.res.Resources;
 import android.content.res.TypedArray;
 import android.database.DataSetObserver;
 import android.graphics.Canvas;
+import android.graphics.Matrix;
 import android.graphics.Rect;
+import android.graphics.RectF;
 import android.graphics.drawable.Drawable;
 import android.os.Parcel;
 import android.os.Parcelable;
@@ -35,6 +39,7 @@ import android.view.ViewConfiguration;
 import android.view.ViewGroup;
 import android.view.ViewParent;
 import android.view.animation.Interpolator;
+import android.view.animation.Transformation;
 import android.widget.Adapter;
 import android.widget.LinearLayout;
 import android.widget.Scroller;
@@ -52,6 +57,15 @@ public class Workspace extends ViewGroup {
 	 */
 	private static final int SNAP_VELOCITY = 600;
 
+	/**
+	 * Screens are attached up to the fill extent away from the current one, and detached once further than the detach extent, both
+	 * in screens as measured by the fill and detach loops
+	 */
+	private static final int DEFAULT_FILL_EXTENT = 3;
+	private static final int DEFAULT_DETACH_EXTENT = 1;
+	private static final int LARGE_WORKSPACE_FILL_EXTENT = 2;
+	private static final int LARGE_WORKSPACE_DETACH_EXTENT = 1;
+
 	private int mDefaultScreen;
 	private boolean mFirstLayout = true;
 
@@ -98,11 +112,41 @@ public class Workspace extends ViewGroup {
 	protected int mFirstPosition;
 	protected int mItemCount = 0;
 	protected final RecycleBin mRecycler = new RecycleBin( 10 );
+	private int mFillExtent = DEFAULT_FILL_EXTENT;
+	private int mDetachExtent = DEFAULT_DETACH_EXTENT;
 	private int mHeightMeasureSpec;
 	private int mWidthMeasureSpec;
 	private EdgeGlow mEdgeGlowLeft;
 	private EdgeGlow mEdgeGlowRight;
+
+	// Transformation of the edge being drawn and the area it covers, reused on every frame
+	private final Matrix mEdgeMatrix = new Matrix();
+	private final RectF mEdgeBounds = new RectF();
+	private final Rect mEdgeDirty = new Rect();
 	private int mOverScrollMode;
+	private TouchLatencyTracer mLatencyTracer;
+
+	// Range of screens whose children currently have a drawing cache
+	private int mCacheFromScreen = INVALID_SCREEN;
+	private int mCacheToScreen = INVALID_SCREEN;
+
+	// Shared by the drawing caches of all the pages
+	private DrawingCacheBudget mCacheBudget;
+
+	// Effect applied to the pages while scrolling, null for the plain slide
+	private PageTransition mTransition;
+
+	// Programmatic navigation requests not yet applied, see queueNavigation
+	private int mPendingNavigation;
+	private boolean mNavigationPosted;
+	private final Runnable mNavigationRunnable = new Runnable() {
+
+		@Override
+		public void run() {
+			mNavigationPosted = false;
+			flushNavigation();
+		}
+	};
 
 	private static class WorkspaceOvershootInterpolator implements Interpolator {
 
@@ -150,6 +194,8 @@ public class Workspace extends ViewGroup {
 		mCurrentScreen = mDefaultScreen;
 		Launcher.setScreen( mCurrentScreen );
 
+		mCacheBudget = new DrawingCacheBudget( DrawingCacheBudget.getDefaultMaxBytes( context.getResources().getDisplayMetrics() ) );
+
 		final ViewConfiguration configuration = ViewConfiguration.get( getContext() );
 		mTouchSlop = configuration.getScaledTouchSlop();
 		mMaximumVelocity = configuration.getScaledMaximumFlingVelocity();
@@ -178,6 +224,117 @@ public class Workspace extends ViewGroup {
 		return mOverScrollMode;
 	}
 
+	/**
+	 * Set the effect applied to the pages while the workspace scrolls.
+	 * 
+	 * @param transition
+	 *           one of the built-in effects of {@link PageTransition}, or null for the plain slide
+	 */
+	void setPageTransition( PageTransition transition ) {
+		clearChildrenCache();
+		mTransition = transition;
+		setStaticTransformationsEnabled( transition != null );
+		invalidate();
+	}
+
+	PageTransition getPageTransition() {
+		return mTransition;
+	}
+
+	/**
+	 * Set the maximum memory held by the drawing caches of all the pages, in bytes
+	 */
+	void setDrawingCacheLimit( int maxBytes ) {
+		mCacheBudget.setMaxBytes( maxBytes );
+	}
+
+	/**
+	 * Returns the budget of the page drawing caches, i.e. to report its usage
+	 */
+	DrawingCacheBudget getDrawingCacheBudget() {
+		return mCacheBudget;
+	}
+
+	@Override
+	protected boolean getChildStaticTransformation( View child, Transformation t ) {
+		final int width = getTotalWidth();
+		if ( mTransition == null || width <= 0 ) return false;
+
+		final float offset = (float) ( child.getLeft() - getPaddingLeft() - getScrollX() ) / width;
+		if ( offset == 0 || offset <= -1 || offset >= 1 ) return false;
+
+		t.clear();
+		mTransition.transform( child, offset, t );
+		return true;
+	}
+
+	/**
+	 * In large workspace mode fewer screens are kept attached around the current one. In both modes memory and per-frame cost do
+	 * not depend on the number of screens.
+	 */
+	public void setLargeWorkspaceMode( boolean enabled ) {
+		mFillExtent = enabled ? LARGE_WORKSPACE_FILL_EXTENT : DEFAULT_FILL_EXTENT;
+		mDetachExtent = enabled ? LARGE_WORKSPACE_DETACH_EXTENT : DEFAULT_DETACH_EXTENT;
+	}
+
+	public boolean isLargeWorkspaceMode() {
+		return mFillExtent == LARGE_WORKSPACE_FILL_EXTENT;
+	}
+
+	/**
+	 * Returns the number of screens on each side of the current one which can be reached without rebuilding the attached window
+	 */
+	private int getScreenWindow() {
+		return mFillExtent - 1;
+	}
+
+	/**
+	 * Returns the attached view for the given screen.
+	 * 
+	 * @return the view or null if the screen is outside of the attached window
+	 */
+	CellLayout getScreenAt( int screen ) {
+		final int index = screen - mFirstPosition;
+		if ( index < 0 || index >= getChildCount() ) return null;
+		return (CellLayout) getChildAt( index );
+	}
+
+	/**
+	 * Returns the screen index of an attached child, or {@link #INVALID_SCREEN}
+	 */
+	private int getScreenOfChild( View child ) {
+		final int index = indexOfChild( child );
+		return index < 0 ? INVALID_SCREEN : mFirstPosition + index;
+	}
+
+	/**
+	 * Enables or disables the touch-to-frame latency tracer. Disabling it discards the collected samples.
+	 */
+	public void setLatencyTracingEnabled( boolean enabled ) {
+		if ( enabled ) {
+			if ( mLatencyTracer == null ) {
+				mLatencyTracer = new TouchLatencyTracer();
+			}
+		} else {
+			mLatencyTracer = null;
+		}
+	}
+
+	public boolean isLatencyTracingEnabled() {
+		return mLatencyTracer != null;
+	}
+
+	/**
+	 * Writes the latencies collected so far to the given file.
+	 * 
+	 * @return false if latency tracing is not enabled
+	 */
+	public boolean exportLatencyTrace( File file ) throws IOException {
+		if ( mLatencyTracer == null ) return false;
+		mLatencyTracer.export( file );
+		return true;
+	}
+
 	public void setAdapter( Adapter adapter ) {
 		
 		if( mAdapter != null ){
@@ -258,15 +415,35 @@ public class Workspace extends ViewGroup {
 		if ( !mScroller.isFinished() ) mScroller.abortAnimation();
 		mCurrentScreen = Math.max( 0, Math.min( currentScreen, mItemCount - 1 ) );
 		mIndicator.setLevel( mCurrentScreen, mItemCount );
-		scrollTo( mCurrentScreen * getWidth(), 0 );
+
+		if ( mItemCount > 0 && getChildCount() > 0 ) {
+			recenterWindow( mCurrentScreen );
+		}
+		scrollTo( mCurrentScreen * getPageWidth(), 0 );
 		invalidate();
 	}
 
+	/**
+	 * Returns the scroll distance between two screens, used by the page animations and the indicator alike
+	 */
+	private int getPageWidth() {
+		return getWidth();
+	}
+
 	@Override
 	public void scrollTo( int x, int y ) {
 		super.scrollTo( x, y );
 		mTouchX = x;
 		mSmoothingTime = System.nanoTime() / NANOTIME_DIV;
+
+		if ( mLatencyTracer != null ) {
+			mLatencyTracer.onScroll();
+		}
+
+		final int width = getPageWidth();
+		if ( mIndicator != null && width > 0 ) {
+			mIndicator.setScrollPosition( (float) x / width, mItemCount );
+		}
 	}
 
 	@Override
@@ -308,8 +485,8 @@ public class Workspace extends ViewGroup {
 		Launcher.setScreen( mCurrentScreen );
 		mNextScreen = INVALID_SCREEN;
 
-		fillToGalleryRight();
-		fillToGalleryLeft();
+		fillToGalleryRight( mCurrentScreen );
+		fillToGalleryLeft( mCurrentScreen );
 
 		if ( toLeft ) {
 			detachOffScreenChildren( true );
@@ -334,7 +511,7 @@ public class Workspace extends ViewGroup {
 		int count = 0;
 
 		if ( toLeft ) {
-			final int galleryLeft = getPaddingLeft() + getScreenScrollPositionX( mCurrentScreen - 1 );;
+			final int galleryLeft = getPaddingLeft() + getScreenScrollPositionX( mCurrentScreen - mDetachExtent );
 			for ( int i = 0; i < numChildren; i++ ) {
 				final View child = getChildAt( i );
 				if ( child.getRight() >= galleryLeft ) {
@@ -345,7 +522,7 @@ public class Workspace extends ViewGroup {
 				}
 			}
 		} else {
-			final int galleryRight = getTotalWidth() + getScreenScrollPositionX( mCurrentScreen + 1 );
+			final int galleryRight = getTotalWidth() + getScreenScrollPositionX( mCurrentScreen + mDetachExtent );
 			for ( int i = numChildren - 1; i >= 0; i-- ) {
 				final View child = getChildAt( i );
 				if ( child.getLeft() <= galleryRight ) {
@@ -368,34 +545,45 @@ public class Workspace extends ViewGroup {
 
 		if ( mEdgeGlowLeft != null ) {
 			if ( !mEdgeGlowLeft.isFinished() ) {
-				final int restoreCount = canvas.save();
 				final int height = getHeight();
+				final Matrix matrix = mEdgeMatrix;
 
-				canvas.rotate( -90 );
-				canvas.translate( -height / 1.5f, 0 );
+				matrix.setRotate( -90 );
+				matrix.preTranslate( -height / 1.5f, 0 );
 				mEdgeGlowLeft.setSize( (int) ( height / 2.5f ), height / 5 );
-
-				if ( mEdgeGlowLeft.draw( canvas ) ) {
-					invalidate();
-				}
-				canvas.restoreToCount( restoreCount );
+				drawEdge( canvas, mEdgeGlowLeft, matrix );
 			}
 			if ( !mEdgeGlowRight.isFinished() ) {
-				final int restoreCount = canvas.save();
 				final int width = getWidth();
 				final int height = getHeight();
+				final Matrix matrix = mEdgeMatrix;
 
-				canvas.translate( getScrollX() + width, height / 3f );
-				canvas.rotate( 90 );
+				matrix.setTranslate( getScrollX() + width, height / 3f );
+				matrix.preRotate( 90 );
 				mEdgeGlowRight.setSize( (int) ( height / 2.5f ), height / 5 );
-				if ( mEdgeGlowRight.draw( canvas ) ) {
-					invalidate();
-				}
-				canvas.restoreToCount( restoreCount );
+				drawEdge( canvas, mEdgeGlowRight, matrix );
 			}
 		}
 	}
 
+	/**
+	 * Draw an edge effect through a transformation and, while it animates, invalidate only the area it covers
+	 */
+	private void drawEdge( Canvas canvas, EdgeGlow edge, Matrix matrix ) {
+		final int restoreCount = canvas.save();
+		canvas.concat( matrix );
+		final boolean animating = edge.draw( canvas );
+		canvas.restoreToCount( restoreCount );
+
+		if ( animating ) {
+			final RectF bounds = mEdgeBounds;
+			edge.getBounds( bounds );
+			matrix.mapRect( bounds );
+			bounds.roundOut( mEdgeDirty );
+			invalidate( mEdgeDirty );
+		}
+	}
+
 	@Override
 	protected void dispatchDraw( Canvas canvas ) {
 		boolean restore = false;
@@ -406,17 +594,27 @@ public class Workspace extends ViewGroup {
 		boolean fastDraw = mTouchState != TOUCH_STATE_SCROLLING && mNextScreen == INVALID_SCREEN;
 		// If we are not scrolling or flinging, draw only the current screen
 		if ( fastDraw ) {
-			drawChild( canvas, getChildAt( mCurrentScreen - mFirstPosition ), getDrawingTime() );
+			final CellLayout current = getScreenAt( mCurrentScreen );
+			if ( current != null ) {
+				current.setVisibleExtent( 0, current.getWidth() );
+				drawChild( canvas, current, getDrawingTime() );
+			}
 		} else {
 			final long drawingTime = getDrawingTime();
 			final float scrollPos = (float) getScrollX() / getTotalWidth();
 			final int leftScreen = (int) scrollPos;
 			final int rightScreen = leftScreen + 1;
 			if ( leftScreen >= 0 ) {
-				drawChild( canvas, getChildAt( leftScreen - mFirstPosition ), drawingTime );
+				final CellLayout left = getScreenAt( leftScreen );
+				if ( left != null ) {
+					drawVisiblePart( canvas, left, drawingTime );
+				}
 			}
 			if ( scrollPos != leftScreen && rightScreen < mItemCount ) {
-				drawChild( canvas, getChildAt( rightScreen - mFirstPosition ), drawingTime );
+				final CellLayout right = getScreenAt( rightScreen );
+				if ( right != null ) {
+					drawVisiblePart( canvas, right, drawingTime );
+				}
 			}
 		}
 
@@ -427,6 +625,36 @@ public class Workspace extends ViewGroup {
 		if ( restore ) {
 			canvas.restoreToCount( restoreCount );
 		}
+
+		if ( mLatencyTracer != null ) {
+			mLatencyTracer.onFrameDrawn();
+		}
+	}
+
+	/**
+	 * Draw only the horizontal slice of a page which is currently on screen
+	 */
+	private void drawVisiblePart( Canvas canvas, CellLayout child, long drawingTime ) {
+		final int scrollX = getScrollX();
+		final int childLeft = child.getLeft();
+		final int visibleLeft = Math.max( childLeft, scrollX );
+		final int visibleRight = Math.min( child.getRight(), scrollX + getWidth() );
+
+		if ( visibleRight <= visibleLeft ) return;
+
+		if ( mTransition != null ) {
+			// the page is drawn moved by its transformation, the slice of its slot on screen does not apply
+			child.setVisibleExtent( 0, child.getWidth() );
+			drawChild( canvas, child, drawingTime );
+			return;
+		}
+
+		child.setVisibleExtent( visibleLeft - childLeft, visibleRight - childLeft );
+
+		final int restoreCount = canvas.save();
+		canvas.clipRect( visibleLeft, child.getTop(), visibleRight, child.getBottom() );
+		drawChild( canvas, child, drawingTime );
+		canvas.restoreToCount( restoreCount );
 	}
 
 	@Override
@@ -435,11 +663,18 @@ public class Workspace extends ViewGroup {
 		computeScroll();
 	}
 
+	@Override
+	protected void onDetachedFromWindow() {
+		super.onDetachedFromWindow();
+		cancelNavigation();
+	}
+
 	@Override
 	protected void onMeasure( int widthMeasureSpec, int heightMeasureSpec ) {
 		super.onMeasure( widthMeasureSpec, heightMeasureSpec );
 		
-		Log.d( TAG, "onMeasure" );
+		if ( WorkspaceTrace.ENABLED ) WorkspaceTrace.trace( WorkspaceTrace.WORKSPACE_MEASURE, MeasureSpec.getSize( widthMeasureSpec ),
+				MeasureSpec.getSize( heightMeasureSpec ) );
 
 		mWidthMeasureSpec = widthMeasureSpec;
 		mHeightMeasureSpec = heightMeasureSpec;
@@ -471,7 +706,7 @@ public class Workspace extends ViewGroup {
 		}
 
 		// The children are given the same width and height as the workspace
-		final int count = mItemCount;
+		final int count = getChildCount();
 
 		if ( !needsMeasuring ) {
 			for ( int i = 0; i < count; i++ ) {
@@ -506,7 +741,7 @@ public class Workspace extends ViewGroup {
 
 	@Override
 	protected void onLayout( boolean changed, int left, int top, int right, int bottom ) {
-		Log.d( TAG, "onLayout: " + changed + ", " + left + ", " + top + ", " + right + ", " + bottom );
+		if ( WorkspaceTrace.ENABLED ) WorkspaceTrace.trace( WorkspaceTrace.WORKSPACE_LAYOUT, left, top, right, bottom );
 		
 		if( changed ){
 			if( !mFirstLayout )
@@ -537,8 +772,8 @@ public class Workspace extends ViewGroup {
 			View sel = makeAndAddView( mCurrentScreen, 0, 0, true );
 			int selectedOffset = childrenLeft + ( childrenWidth / 2 ) - ( sel.getWidth() / 2 );
 			sel.offsetLeftAndRight( selectedOffset );
-			fillToGalleryRight();
-			fillToGalleryLeft();
+			fillToGalleryRight( mCurrentScreen );
+			fillToGalleryLeft( mCurrentScreen );
 			checkSelectionChanged();
 		}
 
@@ -562,6 +797,7 @@ public class Workspace extends ViewGroup {
 			if ( child != null ) {
 				child = mAdapter.getView( position, child, this );
 				setUpChild( child, offset, x, fromLeft );
+				( (CellLayout) child ).mCellInfo.screen = position;
 				return child;
 			}
 		}
@@ -571,10 +807,39 @@ public class Workspace extends ViewGroup {
 
 		// Position the view
 		setUpChild( child, offset, x, fromLeft );
+		( (CellLayout) child ).mCellInfo.screen = position;
 
 		return child;
 	}
 
+	/**
+	 * Replace the attached window with the screens around the given one, recycling the current children. Used when the workspace
+	 * jumps further than the window, so the cost does not depend on the distance.
+	 */
+	private void recenterWindow( int screen ) {
+		final int first = Math.max( 0, screen - getScreenWindow() );
+		final int last = Math.min( mItemCount - 1, screen + getScreenWindow() );
+		if ( getChildCount() > 0 && first >= mFirstPosition && last < mFirstPosition + getChildCount() ) {
+			// the window is already attached
+			return;
+		}
+
+		final View focused = getFocusedChild();
+		if ( focused != null ) {
+			focused.clearFocus();
+		}
+
+		clearChildrenCache();
+		recycleAllViews();
+		detachAllViewsFromParent();
+
+		mFirstPosition = screen;
+		makeAndAddView( screen, screen - mCurrentScreen, getPaddingLeft() + getScreenScrollPositionX( screen ), true );
+		fillToGalleryRight( screen );
+		fillToGalleryLeft( screen );
+		invalidate();
+	}
+
 	private void setUpChild( View child, int offset, int x, boolean fromLeft ) {
 
 		// Respect layout params that are already in the view. Otherwise
@@ -586,6 +851,7 @@ public class Workspace extends ViewGroup {
 
 		addViewInLayout( child, fromLeft ? -1 : 0, lp );
 		child.setSelected( offset == 0 );
+		( (CellLayout) child ).setDrawingCacheBudget( mCacheBudget );
 
 		// Get measure specs
 		int childHeightSpec = ViewGroup.getChildMeasureSpec( mHeightMeasureSpec, getPaddingTop() + getPaddingBottom(), lp.height );
@@ -625,9 +891,9 @@ public class Workspace extends ViewGroup {
 		return ( screen * getTotalWidth() );
 	}
 
-	private void fillToGalleryRight() {
+	private void fillToGalleryRight( int center ) {
 		int itemSpacing = 0;
-		int galleryRight = getScreenScrollPositionX( mCurrentScreen + 3 );
+		int galleryRight = getScreenScrollPositionX( center + mFillExtent );
 		int numChildren = getChildCount();
 		int numItems = mItemCount;
 
@@ -645,7 +911,7 @@ public class Workspace extends ViewGroup {
 		}
 
 		while ( curLeftEdge < galleryRight && curPosition < numItems ) {
-			prevIterationView = makeAndAddView( curPosition, curPosition - mCurrentScreen, curLeftEdge, true );
+			prevIterationView = makeAndAddView( curPosition, curPosition - center, curLeftEdge, true );
 
 			// Set state for next iteration
 			curLeftEdge = prevIterationView.getRight() + itemSpacing;
@@ -653,9 +919,9 @@ public class Workspace extends ViewGroup {
 		}
 	}
 
-	private void fillToGalleryLeft() {
+	private void fillToGalleryLeft( int center ) {
 		int itemSpacing = 0;
-		int galleryLeft = getScreenScrollPositionX( mCurrentScreen - 3 );
+		int galleryLeft = getScreenScrollPositionX( center - mFillExtent );
 
 		// Set state for initial iteration
 		View prevIterationView = getChildAt( 0 );
@@ -672,7 +938,7 @@ public class Workspace extends ViewGroup {
 		}
 
 		while ( curRightEdge > galleryLeft && curPosition >= 0 ) {
-			prevIterationView = makeAndAddView( curPosition, curPosition - mCurrentScreen, curRightEdge, false );
+			prevIterationView = makeAndAddView( curPosition, curPosition - center, curRightEdge, false );
 
 			// Remember some state
 			mFirstPosition = curPosition;
@@ -701,6 +967,12 @@ public class Workspace extends ViewGroup {
 		recycleAllViews();
 		detachAllViewsFromParent();
 		mRecycler.clear();
+		mCacheBudget.clear();
+		mCacheFromScreen = mCacheToScreen = INVALID_SCREEN;
+
+		if ( mLatencyTracer != null ) {
+			mLatencyTracer.cancelPending();
+		}
 
 		scrollTo( 0, 0 );
 		
@@ -720,7 +992,9 @@ public class Workspace extends ViewGroup {
 
 	@Override
 	public boolean requestChildRectangleOnScreen( View child, Rect rectangle, boolean immediate ) {
-		int screen = indexOfChild( child );
+		int screen = getScreenOfChild( child );
+
+		if ( screen == INVALID_SCREEN ) return false;
 
 		if ( screen != mCurrentScreen || !mScroller.isFinished() ) {
 			snapToScreen( screen );
@@ -743,7 +1017,10 @@ public class Workspace extends ViewGroup {
 			}
 
 			if ( focusableScreen != INVALID_SCREEN ) {
-				getChildAt( focusableScreen ).requestFocus( direction, previouslyFocusedRect );
+				final View screen = getScreenAt( focusableScreen );
+				if ( screen != null ) {
+					screen.requestFocus( direction, previouslyFocusedRect );
+				}
 			}
 		}
 		return false;
@@ -753,13 +1030,13 @@ public class Workspace extends ViewGroup {
 	public boolean dispatchUnhandledMove( View focused, int direction ) {
 
 		if ( direction == View.FOCUS_LEFT ) {
-			if ( getCurrentScreen() > 0 ) {
-				snapToScreen( getCurrentScreen() - 1 );
+			if ( getNavigationTarget() > 0 ) {
+				queueNavigation( -1 );
 				return true;
 			}
 		} else if ( direction == View.FOCUS_RIGHT ) {
-			if ( getCurrentScreen() < mItemCount - 1 ) {
-				snapToScreen( getCurrentScreen() + 1 );
+			if ( getNavigationTarget() < mItemCount - 1 ) {
+				queueNavigation( 1 );
 				return true;
 			}
 		}
@@ -780,15 +1057,18 @@ public class Workspace extends ViewGroup {
 	public void addFocusables( ArrayList<View> views, int direction, int focusableMode ) {
 
 		if ( isEnabled() ) {
-			getChildAt( mCurrentScreen ).addFocusables( views, direction );
+			final View current = getScreenAt( mCurrentScreen );
+			if ( current != null ) {
+				current.addFocusables( views, direction );
+			}
+			View neighbour = null;
 			if ( direction == View.FOCUS_LEFT ) {
-				if ( mCurrentScreen > 0 ) {
-					getChildAt( mCurrentScreen - 1 ).addFocusables( views, direction );
-				}
+				neighbour = getScreenAt( mCurrentScreen - 1 );
 			} else if ( direction == View.FOCUS_RIGHT ) {
-				if ( mCurrentScreen < mItemCount - 1 ) {
-					getChildAt( mCurrentScreen + 1 ).addFocusables( views, direction );
-				}
+				neighbour = getScreenAt( mCurrentScreen + 1 );
+			}
+			if ( neighbour != null ) {
+				neighbour.addFocusables( views, direction );
 			}
 		}
 	}
@@ -832,6 +1112,10 @@ public class Workspace extends ViewGroup {
 						mTouchX = getScrollX();
 						mSmoothingTime = System.nanoTime() / NANOTIME_DIV;
 						enableChildrenCache( mCurrentScreen - 1, mCurrentScreen + 1 );
+
+						if ( mLatencyTracer != null ) {
+							mLatencyTracer.onTouchEvent( ev.getEventTime() );
+						}
 					}
 
 				}
@@ -896,7 +1180,7 @@ public class Workspace extends ViewGroup {
 	 */
 	@Override
 	public void focusableViewAvailable( View focused ) {
-		View current = getChildAt( mCurrentScreen );
+		View current = getScreenAt( mCurrentScreen );
 		View v = focused;
 		while ( true ) {
 			if ( v == current ) {
@@ -924,22 +1208,66 @@ public class Workspace extends ViewGroup {
 
 		final int count = getChildCount();
 
-		fromScreen = Math.max( fromScreen, 0 );
-		toScreen = Math.min( toScreen, count - 1 );
+		// only the attached window can be cached
+		fromScreen = Math.max( fromScreen, mFirstPosition );
+		toScreen = Math.min( toScreen, mFirstPosition + count - 1 );
+		if ( fromScreen > toScreen ) return;
+
+		final int cachedFrom = mCacheFromScreen;
+		final int cachedTo = mCacheToScreen;
+		final boolean hasCache = cachedFrom != INVALID_SCREEN;
+
+		if ( hasCache ) {
+			// already covered by a previous call, i.e. a retargeted animation
+			if ( fromScreen >= cachedFrom && toScreen <= cachedTo ) return;
+
+			fromScreen = Math.min( fromScreen, cachedFrom );
+			toScreen = Math.max( toScreen, cachedTo );
+		}
+
+		// fading pages are drawn from a cache of the whole page, drawing them with an alpha would need a layer each frame
+		final boolean cachePages = mTransition != null && mTransition.usesAlpha();
+		setChildrenDrawnWithCacheEnabled( cachePages );
+		mCacheBudget.releaseDetached();
 
+		// the current screen is cached last, so it is the last one the budget evicts
 		for ( int i = fromScreen; i <= toScreen; i++ ) {
-			final CellLayout layout = (CellLayout) getChildAt( i );
-			layout.setChildrenDrawnWithCacheEnabled( true );
-			layout.setChildrenDrawingCacheEnabled( true );
+			if ( i == mCurrentScreen || ( hasCache && i >= cachedFrom && i <= cachedTo ) ) continue;
+			enablePageCache( (CellLayout) getChildAt( i - mFirstPosition ), cachePages );
+		}
+		if ( mCurrentScreen >= fromScreen && mCurrentScreen <= toScreen
+				&& !( hasCache && mCurrentScreen >= cachedFrom && mCurrentScreen <= cachedTo ) ) {
+			enablePageCache( (CellLayout) getChildAt( mCurrentScreen - mFirstPosition ), cachePages );
+		}
+
+		mCacheFromScreen = fromScreen;
+		mCacheToScreen = toScreen;
+	}
+
+	private void enablePageCache( CellLayout layout, boolean cachePage ) {
+		layout.setChildrenDrawnWithCacheEnabled( true );
+		layout.setChildrenDrawingCacheEnabled( true );
+		if ( cachePage ) {
+			mCacheBudget.acquire( layout );
 		}
 	}
 
+	/**
+	 * Stop drawing the pages from their caches. The caches of the cells are kept for the next swipe, within the budget, whole page
+	 * caches are destroyed.
+	 */
 	void clearChildrenCache() {
 		final int count = getChildCount();
 		for ( int i = 0; i < count; i++ ) {
 			final CellLayout layout = (CellLayout) getChildAt( i );
 			layout.setChildrenDrawnWithCacheEnabled( false );
+			if ( layout.isDrawingCacheEnabled() ) {
+				mCacheBudget.release( layout );
+			}
 		}
+		setChildrenDrawnWithCacheEnabled( false );
+		mCacheBudget.unpinAll();
+		mCacheFromScreen = mCacheToScreen = INVALID_SCREEN;
 	}
 
 	@Override
@@ -963,6 +1291,7 @@ public class Workspace extends ViewGroup {
 				if ( !mScroller.isFinished() ) {
 					mScroller.abortAnimation();
 				}
+				cancelNavigation();
 
 				// Remember where the motion event started
 				mLastMotionX = ev.getX();
@@ -984,6 +1313,10 @@ public class Workspace extends ViewGroup {
 
 					mLastMotionX = x;
 
+					if ( mLatencyTracer != null && deltaX != 0 ) {
+						mLatencyTracer.onTouchEvent( ev.getEventTime() );
+					}
+
 					if ( deltaX < 0 ) {
 						mTouchX += deltaX;
 						mSmoothingTime = System.nanoTime() / NANOTIME_DIV;
@@ -1109,19 +1442,28 @@ public class Workspace extends ViewGroup {
 
 		whichScreen = Math.max( 0, Math.min( whichScreen, mItemCount - 1 ) );
 
+		final int width = getPageWidth();
+		if ( width > 0 && Math.abs( whichScreen * width - getScrollX() ) > getScreenWindow() * width ) {
+			// Too far for the attached window: jump next to the destination and only animate the last screen
+			final int from = whichScreen * width > getScrollX() ? whichScreen - 1 : whichScreen + 1;
+			if ( !mScroller.isFinished() ) {
+				mScroller.abortAnimation();
+			}
+			recenterWindow( whichScreen );
+			scrollTo( from * width, 0 );
+		}
+
 		enableChildrenCache( mCurrentScreen, whichScreen );
 
 		mNextScreen = whichScreen;
 
-		mIndicator.setLevel( mNextScreen, mItemCount );
-
 		View focusedChild = getFocusedChild();
-		if ( focusedChild != null && whichScreen != mCurrentScreen && focusedChild == getChildAt( mCurrentScreen ) ) {
+		if ( focusedChild != null && whichScreen != mCurrentScreen && focusedChild == getScreenAt( mCurrentScreen ) ) {
 			focusedChild.clearFocus();
 		}
 
 		final int screenDelta = Math.max( 1, Math.abs( whichScreen - mCurrentScreen ) );
-		final int newX = whichScreen * getWidth();
+		final int newX = whichScreen * width;
 		final int delta = newX - getScrollX();
 		int duration = ( screenDelta + 1 ) * 100;
 
@@ -1185,18 +1527,86 @@ public class Workspace extends ViewGroup {
 	}
 
 	public void scrollLeft() {
-		if ( mScroller.isFinished() ) {
-			if ( mCurrentScreen > 0 ) snapToScreen( mCurrentScreen - 1 );
-		} else {
-			if ( mNextScreen > 0 ) snapToScreen( mNextScreen - 1 );
-		}
+		if ( getNavigationTarget() > 0 ) queueNavigation( -1 );
 	}
 
 	public void scrollRight() {
-		if ( mScroller.isFinished() ) {
-			if ( mCurrentScreen < mItemCount - 1 ) snapToScreen( mCurrentScreen + 1 );
+		if ( getNavigationTarget() < mItemCount - 1 ) queueNavigation( 1 );
+	}
+
+	/**
+	 * Returns the screen the workspace is heading to, including the navigation requests not yet applied.
+	 */
+	int getNavigationTarget() {
+		return getNavigationBase() + mPendingNavigation;
+	}
+
+	private int getNavigationBase() {
+		if ( !mScroller.isFinished() && mNextScreen != INVALID_SCREEN ) {
+			return mNextScreen;
+		}
+		return mCurrentScreen;
+	}
+
+	/**
+	 * Queue a relative page move. Requests received before the queue is flushed, like repeated taps or key repeats, are coalesced
+	 * into a single animation toward the final destination.
+	 */
+	private void queueNavigation( int delta ) {
+		mPendingNavigation += delta;
+		if ( !mNavigationPosted ) {
+			mNavigationPosted = true;
+			post( mNavigationRunnable );
+		}
+	}
+
+	private void flushNavigation() {
+		final int delta = mPendingNavigation;
+		mPendingNavigation = 0;
+
+		if ( delta == 0 || mItemCount < 1 ) return;
+
+		final int base = getNavigationBase();
+		final int target = Math.max( 0, Math.min( base + delta, mItemCount - 1 ) );
+		if ( target == base ) return;
+
+		if ( !mScroller.isFinished() && mNextScreen != INVALID_SCREEN ) {
+			retargetScroll( target );
 		} else {
-			if ( mNextScreen < mItemCount - 1 ) snapToScreen( mNextScreen + 1 );
+			snapToScreen( target );
+		}
+	}
+
+	/**
+	 * Move the destination of the running page animation. The scroll goes on from where it is, with the time left extended by the
+	 * extra screens, instead of being aborted and started again.
+	 */
+	private void retargetScroll( int whichScreen ) {
+		final int width = getPageWidth();
+		final int currX = mScroller.getCurrX();
+		if ( width <= 0 || Math.abs( whichScreen * width - currX ) > getScreenWindow() * width ) {
+			snapToScreen( whichScreen );
+			return;
+		}
+
+		final int extraScreens = Math.abs( whichScreen - mNextScreen );
+		enableChildrenCache( mCurrentScreen, whichScreen );
+		mNextScreen = whichScreen;
+
+		final int remaining = Math.max( 0, mScroller.getDuration() - mScroller.timePassed() );
+		final int duration = Math.max( 100, remaining + extraScreens * 100 );
+
+		mScrollInterpolator.disableSettle();
+		mScroller.startScroll( currX, 0, whichScreen * width - currX, 0, duration );
+		awakenScrollBars( duration );
+		invalidate();
+	}
+
+	private void cancelNavigation() {
+		mPendingNavigation = 0;
+		if ( mNavigationPosted ) {
+			mNavigationPosted = false;
+			removeCallbacks( mNavigationRunnable );
 		}
 	}
 
@@ -1204,18 +1614,18 @@ public class Workspace extends ViewGroup {
 		int result = -1;
 		if ( v != null ) {
 			ViewParent vp = v.getParent();
-			int count = mItemCount;
-			for ( int i = 0; i < count; i++ ) {
-				if ( vp == getChildAt( i ) ) {
-					return i;
-				}
+			if ( vp instanceof CellLayout ) {
+				return getScreenOfChild( (View) vp );
 			}
 		}
 		return result;
 	}
 
+	/**
+	 * Search the attached screens for a view with the given tag
+	 */
 	public View getViewForTag( Object tag ) {
-		int screenCount = mItemCount;
+		int screenCount = getChildCount();
 		for ( int screen = 0; screen < screenCount; screen++ ) {
 			CellLayout currentScreen = ( (CellLayout) getChildAt( screen ) );
 			int count = currentScreen.getChildCount();
@@ -1250,7 +1660,10 @@ public class Workspace extends ViewGroup {
 		} else {
 			setCurrentScreen( mDefaultScreen );
 		}
-		getChildAt( mDefaultScreen ).requestFocus();
+		final View screen = getScreenAt( mDefaultScreen );
+		if ( screen != null ) {
+			screen.requestFocus();
+		}
 	}
 
 	void setIndicator( WorkspaceIndicator indicator ) {
@@ -1324,7 +1737,14 @@ public class Workspace extends ViewGroup {
 		}
 
 		public void add( View o ) {
-			if ( !full ) array[start = ( ++start % array.length )] = o;
+			if ( full ) {
+				// make room by dropping the oldest view, already detached since the bin holds more views than the attached window
+				final View oldest = remove();
+				if ( oldest != null ) {
+					removeDetachedView( oldest, true );
+				}
+			}
+			array[start = ( ++start % array.length )] = o;
 			if ( start == end ) full = true;
 		}
 
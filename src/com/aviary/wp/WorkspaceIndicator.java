@@ -2,14 +2,39 @@ package com.aviary.wp;
 
 import android.content.Context;
 import android.content.res.TypedArray;
+import android.graphics.Canvas;
+import android.graphics.drawable.Drawable;
 import android.util.AttributeSet;
-import android.widget.ImageView;
-import android.widget.LinearLayout;
+import android.view.View;
 
-public class WorkspaceIndicator extends LinearLayout {
+/**
+ * Row of dots showing the current screen. All the dots are drawn by this view with one drawable per state, so changing the
+ * screen or the number of screens only redraws it. While the workspace scrolls the selected dot follows the scroll position,
+ * only the area it moves over is redrawn. The selected dot is drawn over the normal ones.
+ */
+public class WorkspaceIndicator extends View {
+
+	/**
+	 * Maximum number of dots displayed. With more screens the dots represent a window sliding around the current screen.
+	 */
+	static final int MAX_DOTS = 9;
+
+	// Horizontal space around each dot
+	private static final int DOT_PADDING = 1;
 
 	int mResId;
-	int mSelected;
+	int mCount;
+
+	// Scroll position, in screens
+	private float mPosition;
+
+	// Screen of the first dot, fractional while the row of dots slides
+	private float mWindowStart;
+
+	private Drawable mDotNormal;
+	private Drawable mDotSelected;
+	private int mDotWidth;
+	private int mDotHeight;
 
 	public WorkspaceIndicator( Context context, AttributeSet attrs ) {
 		super( context, attrs );
@@ -19,44 +44,130 @@ public class WorkspaceIndicator extends LinearLayout {
 	private void init( Context context, AttributeSet attrs, int defStyle ) {
 		TypedArray a = context.obtainStyledAttributes( attrs, R.styleable.WorkspaceIndicator, defStyle, 0 );
 
-		setOrientation( LinearLayout.HORIZONTAL );
-
 		mResId = a.getResourceId( R.styleable.WorkspaceIndicator_indicatorId, 0 );
 
 		if ( mResId != 0 ) {
-			context.getResources().getDrawable( mResId );
+			// two mutated copies of the state list, each one stays on its state for good
+			mDotNormal = context.getResources().getDrawable( mResId ).mutate();
+			mDotSelected = context.getResources().getDrawable( mResId ).mutate();
+			mDotNormal.setState( EMPTY_STATE_SET );
+			mDotSelected.setState( SELECTED_STATE_SET );
+
+			mDotWidth = Math.max( mDotNormal.getIntrinsicWidth(), mDotSelected.getIntrinsicWidth() ) + DOT_PADDING * 2;
+			mDotHeight = Math.max( mDotNormal.getIntrinsicHeight(), mDotSelected.getIntrinsicHeight() );
 		}
 
 		a.recycle();
 	}
 
-	void resetView( int count ) {
-		removeAllViews();
-		
-		if ( mResId != 0 && count > 0 ) {
+	@Override
+	protected void onMeasure( int widthMeasureSpec, int heightMeasureSpec ) {
+		// take all the width offered, the dots are centered when drawn, so a new number of screens never needs a layout
+		final int widthMode = MeasureSpec.getMode( widthMeasureSpec );
+		int width = MeasureSpec.getSize( widthMeasureSpec );
+		if ( widthMode == MeasureSpec.UNSPECIFIED ) {
+			width = MAX_DOTS * mDotWidth + getPaddingLeft() + getPaddingRight();
+		}
+
+		final int height = resolveSize( mDotHeight + getPaddingTop() + getPaddingBottom(), heightMeasureSpec );
+		setMeasuredDimension( width, height );
+	}
+
+	public void setLevel( int mCurrentScreen, int mItemCount ) {
+		if ( mCurrentScreen >= 0 && mCurrentScreen < mItemCount ) {
+			setScrollPosition( mCurrentScreen, mItemCount );
+		} else if ( mItemCount != mCount ) {
+			mCount = mItemCount;
+			mPosition = 0;
+			mWindowStart = 0;
+			invalidate();
+		}
+	}
+
+	/**
+	 * Move the selected dot to a scroll position. With more screens than dots, the row of dots slides under the selected dot
+	 * instead, continuously, so the indicator follows the scroll over its whole range.
+	 * 
+	 * @param position
+	 *           scroll position in screens, fractional while scrolling
+	 * @param count
+	 *           number of screens
+	 */
+	void setScrollPosition( float position, int count ) {
+		final int dots = Math.min( count, MAX_DOTS );
+		position = Math.max( 0, Math.min( position, count - 1 ) );
+		final float windowStart = count <= dots ? 0 : Math.max( 0, Math.min( position - dots / 2, count - dots ) );
 
-			for ( int i = 0; i < count; i++ ) {
-				ImageView v = new ImageView( getContext() );
-				v.setImageResource( mResId );
-				v.setSelected( false );
-				v.setPadding( 1, 0, 1, 0 );
-				addView( v );
+		if ( count != mCount || windowStart != mWindowStart ) {
+			final boolean countChanged = count != mCount;
+			mCount = count;
+			mPosition = position;
+			mWindowStart = windowStart;
+			if ( countChanged ) {
+				invalidate();
+			} else {
+				// all the dots move
+				final int left = getDotLeft( 0 );
+				invalidate( left - 1, 0, left + dots * mDotWidth + 1, getHeight() );
 			}
+		} else if ( position != mPosition ) {
+			final int oldLeft = getDotLeft( mPosition - windowStart );
+			final int newLeft = getDotLeft( position - windowStart );
+			mPosition = position;
+			invalidate( Math.min( oldLeft, newLeft ) - 1, 0, Math.max( oldLeft, newLeft ) + mDotWidth + 1, getHeight() );
 		}
 	}
 
-	public void setLevel( int mCurrentScreen, int mItemCount ) {
+	/**
+	 * Returns the left edge of a dot cell for a position in dots
+	 */
+	private int getDotLeft( float position ) {
+		final int dots = Math.min( mCount, MAX_DOTS );
+		final int paddingLeft = getPaddingLeft();
+		final int left = paddingLeft + ( getWidth() - paddingLeft - getPaddingRight() - dots * mDotWidth ) / 2;
+		return left + (int) ( position * mDotWidth );
+	}
+
+	@Override
+	protected void onDraw( Canvas canvas ) {
+		final int dots = Math.min( mCount, MAX_DOTS );
+		if ( dots == 0 || mDotNormal == null ) return;
 
-		if ( getChildCount() != mItemCount ) {
-			resetView( mItemCount );
-			mSelected = 0;
+		final int dotWidth = mDotWidth;
+		final int dotHeight = mDotHeight;
+		final int paddingTop = getPaddingTop();
+		final int top = paddingTop + ( getHeight() - paddingTop - getPaddingBottom() - dotHeight ) / 2;
+		final int left = getDotLeft( 0 );
+
+		final int first = (int) mWindowStart;
+		final float shift = mWindowStart - first;
+		final boolean sliding = shift != 0;
+
+		int restoreCount = 0;
+		if ( sliding ) {
+			// the dots at both ends are partly out of the row
+			restoreCount = canvas.save();
+			canvas.clipRect( left, 0, left + dots * dotWidth, getHeight() );
+		}
+
+		final int last = Math.min( mCount - first, sliding ? dots + 1 : dots );
+		for ( int i = 0; i < last; i++ ) {
+			drawDot( canvas, mDotNormal, getDotLeft( i - shift ), top );
 		}
+		drawDot( canvas, mDotSelected, getDotLeft( mPosition - mWindowStart ), top );
 
-		if ( mCurrentScreen >= 0 && mCurrentScreen < getChildCount() ){
-			getChildAt( mSelected ).setSelected( false );
-			getChildAt( mCurrentScreen ).setSelected( true );
-			mSelected = mCurrentScreen;
+		if ( sliding ) {
+			canvas.restoreToCount( restoreCount );
 		}
 	}
 
+	private void drawDot( Canvas canvas, Drawable dot, int cellLeft, int top ) {
+		final int width = dot.getIntrinsicWidth();
+		final int height = dot.getIntrinsicHeight();
+		final int x = cellLeft + ( mDotWidth - width ) / 2;
+		final int y = top + ( mDotHeight - height ) / 2;
+		dot.setBounds( x, y, x + width, y + height );
+		dot.draw( canvas );
+	}
+
 }
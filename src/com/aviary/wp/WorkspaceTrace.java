@@ -0,0 +1,104 @@
+package com.aviary.wp;
+
+import android.os.SystemClock;
+import android.util.Log;
+
+/**
+ * Trace points of the workspace layout hot paths.
+ *
+ * Every call site is written as <code>if ( WorkspaceTrace.ENABLED ) WorkspaceTrace.trace( ... )</code>: with {@link #ENABLED}
+ * false the compiler drops the whole statement, so release builds pay nothing. When enabled, events are recorded as an id and
+ * up to four int fields into a fixed size ring buffer, nothing is formatted until the buffer is dumped or logging is turned on.
+ * Must only be used from the UI thread.
+ */
+final class WorkspaceTrace {
+
+	/**
+	 * Compile time switch of all the trace points
+	 */
+	static final boolean ENABLED = false;
+
+	/** CellLayout.LayoutParams.setup: x, y, width, height */
+	static final int LAYOUT_PARAMS_SETUP = 0;
+	/** CellLayout.onMeasure: width, height, children */
+	static final int CELL_MEASURE = 1;
+	/** CellLayout.addView: cellX, cellY, spanH, spanV */
+	static final int CELL_ADD_VIEW = 2;
+	/** Workspace.onMeasure: width, height */
+	static final int WORKSPACE_MEASURE = 3;
+	/** Workspace.onLayout: left, top, right, bottom */
+	static final int WORKSPACE_LAYOUT = 4;
+	/** WorkspaceAdapter.getView: position, recycled */
+	static final int ADAPTER_GET_VIEW = 5;
+
+	private static final String[] NAMES = { "setup", "cell.measure", "cell.addView", "workspace.measure", "workspace.layout",
+			"adapter.getView" };
+
+	private static final int CAPACITY = 256;
+
+	private static final long[] sTimes = new long[CAPACITY];
+	private static final int[] sEvents = new int[CAPACITY];
+	private static final int[] sFields = new int[CAPACITY * 4];
+	private static int sHead;
+	private static int sSize;
+
+	// Also write every event to the log as it is recorded
+	private static boolean sLogEvents;
+
+	private WorkspaceTrace() {}
+
+	static void setLogEvents( boolean value ) {
+		sLogEvents = value;
+	}
+
+	static void trace( int event, int a ) {
+		trace( event, a, 0, 0, 0 );
+	}
+
+	static void trace( int event, int a, int b ) {
+		trace( event, a, b, 0, 0 );
+	}
+
+	static void trace( int event, int a, int b, int c ) {
+		trace( event, a, b, c, 0 );
+	}
+
+	static void trace( int event, int a, int b, int c, int d ) {
+		final int head = sHead;
+		sTimes[head] = SystemClock.uptimeMillis();
+		sEvents[head] = event;
+		final int offset = head * 4;
+		sFields[offset] = a;
+		sFields[offset + 1] = b;
+		sFields[offset + 2] = c;
+		sFields[offset + 3] = d;
+		sHead = ( head + 1 ) % CAPACITY;
+		if ( sSize < CAPACITY ) sSize++;
+
+		if ( sLogEvents ) {
+			Log.d( Workspace.TAG, format( head ) );
+		}
+	}
+
+	/**
+	 * Write the recorded events to the log, oldest first, and clear the buffer
+	 */
+	static void dump() {
+		final int start = sSize < CAPACITY ? 0 : sHead;
+		for ( int i = 0; i < sSize; i++ ) {
+			Log.d( Workspace.TAG, format( ( start + i ) % CAPACITY ) );
+		}
+		clear();
+	}
+
+	static void clear() {
+		sHead = 0;
+		sSize = 0;
+	}
+
+	private static String format( int index ) {
+		final int offset = index * 4;
+		return sTimes[index] + " " + NAMES[sEvents[index]] + ": " + sFields[offset] + ", " + sFields[offset + 1] + ", "
+				+ sFields[offset + 2] + ", " + sFields[offset + 3];
+	}
+}